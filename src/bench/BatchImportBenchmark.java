@@ -0,0 +1,90 @@
+package bench;
+
+import impl.ContactManagerImpl;
+import impl.ContactSpec;
+import impl.MeetingSpec;
+import spec.Contact;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Compares importing records one call at a time with the batch APIs.<br>
+ * The same contacts and meetings are generated for both imports, the
+ * time taken to build the lists of records is not measured.
+ * <br>
+ * Run with a large heap, eg. {@code java -Xmx4g bench.BatchImportBenchmark}<br>
+ * An optional argument sets the number of contacts and of meetings
+ * to import (default 1M each).
+ *
+ * @author lmignot
+ */
+public final class BatchImportBenchmark {
+
+    private static final int ATTENDEE_POOL = 1_000;
+
+    private BatchImportBenchmark() { }
+
+    public static void main(String[] args) {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+
+        for (int round = 0; round < 2; round++) {
+            System.out.println((round == 0) ? "Warm-up" : "Measured");
+            run(count, false);
+            run(count, true);
+        }
+    }
+
+    private static void run(int count, boolean batch) {
+        ContactManagerImpl cm = new ContactManagerImpl();
+        SyntheticData data = new SyntheticData(SyntheticData.DEFAULT_SEED);
+        List<ContactSpec> contacts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            contacts.add(new ContactSpec(data.name(), data.notes()));
+        }
+
+        long start = System.nanoTime();
+        if (batch) {
+            cm.addNewContacts(contacts);
+        } else {
+            contacts.forEach(c -> cm.addNewContact(c.getName(), c.getNotes()));
+        }
+        long contactNanos = System.nanoTime() - start;
+
+        List<Contact> pool = new ArrayList<>(cm.getContacts(firstIds(Math.min(count, ATTENDEE_POOL))));
+        pool.sort(Comparator.comparingInt(Contact::getId));
+        List<MeetingSpec> meetings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            boolean past = (i % 2 == 0);
+            meetings.add(past
+                ? new MeetingSpec(data.attendees(pool), data.date(true), data.notes())
+                : new MeetingSpec(data.attendees(pool), data.date(false)));
+        }
+
+        start = System.nanoTime();
+        if (batch) {
+            cm.addMeetings(meetings);
+        } else {
+            for (MeetingSpec m : meetings) {
+                if (m.isPast()) {
+                    cm.addNewPastMeeting(m.getContacts(), m.getDate(), m.getNotes());
+                } else {
+                    cm.addFutureMeeting(m.getContacts(), m.getDate());
+                }
+            }
+        }
+        long meetingNanos = System.nanoTime() - start;
+
+        System.out.printf("%-9s %,10d contacts: %7.0f ms, %,10d meetings: %7.0f ms%n",
+            batch ? "batch" : "per-call", count, contactNanos / 1e6, count, meetingNanos / 1e6);
+    }
+
+    private static int[] firstIds(int n) {
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = i + 1;
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,93 @@
+package bench;
+
+import impl.ContactManagerImpl;
+import spec.Contact;
+import spec.ContactManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the throughput of a shared CM with a read-mostly mix of
+ * calls, from one thread up to the number of available cores.<br>
+ * Each thread looks up meetings by ID, lists a contact's future
+ * meetings and, for a small share of calls, schedules a new meeting.
+ * With queries holding a shared read lock the throughput should grow
+ * with the number of threads, until the writes start to dominate.
+ * <br>
+ * Run with {@code java bench.ConcurrentThroughputBenchmark}<br>
+ * Optional arguments set the percentage of writes (default 5) and the
+ * number of meetings to start with (default 100K).
+ *
+ * @author lmignot
+ */
+public final class ConcurrentThroughputBenchmark {
+
+    private static final int CONTACTS = 1_000;
+    private static final long RUN_MILLIS = 2_000;
+    private static final int WARMUP_ROUNDS = 2;
+
+    private ConcurrentThroughputBenchmark() { }
+
+    public static void main(String[] args) throws InterruptedException {
+        int writePercent = (args.length > 0) ? Integer.parseInt(args[0]) : 5;
+        int meetings = (args.length > 1) ? Integer.parseInt(args[1]) : 100_000;
+
+        ContactManager cm = new ContactManagerImpl();
+        SyntheticData data = new SyntheticData(SyntheticData.DEFAULT_SEED);
+        List<Contact> contacts = data.addContacts(cm, CONTACTS);
+        data.addMeetings(cm, contacts, meetings);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            run(cm, contacts, cores, writePercent, meetings);
+        }
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            long ops = run(cm, contacts, threads, writePercent, meetings);
+            System.out.printf("%3d threads: %,14.0f ops/s%n", threads, ops * 1000.0 / RUN_MILLIS);
+        }
+    }
+
+    /**
+     * Runs the mix of calls on a number of threads for a fixed time
+     *
+     * @return the total number of calls made
+     */
+    private static long run(ContactManager cm, List<Contact> contacts, int threads, int writePercent,
+                            int meetings) throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch done = new CountDownLatch(threads);
+        List<Thread> workers = new ArrayList<>(threads);
+
+        for (int t = 0; t < threads; t++) {
+            SyntheticData data = new SyntheticData(SyntheticData.DEFAULT_SEED + t);
+            Random rnd = new Random(SyntheticData.DEFAULT_SEED + t);
+            workers.add(new Thread(() -> {
+                long count = 0;
+                while (running.get()) {
+                    int op = rnd.nextInt(100);
+                    if (op < writePercent) {
+                        cm.addFutureMeeting(data.attendees(contacts), data.date(false));
+                    } else if (op % 2 == 0) {
+                        cm.getMeeting(rnd.nextInt(meetings) + 1);
+                    } else {
+                        cm.getFutureMeetingList(contacts.get(rnd.nextInt(contacts.size())));
+                    }
+                    count++;
+                }
+                ops.add(count);
+                done.countDown();
+            }));
+        }
+        workers.forEach(Thread::start);
+        Thread.sleep(RUN_MILLIS);
+        running.set(false);
+        done.await();
+        return ops.sum();
+    }
+}
@@ -0,0 +1,287 @@
+package bench;
+
+import impl.ContactManagerImpl;
+import impl.FakeTimeSource;
+import impl.SnapshotStorage;
+import spec.Contact;
+import spec.ContactManager;
+import spec.Meeting;
+import spec.PastMeeting;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Measures every {@link ContactManager} operation at 1K, 100K and 10M
+ * records, so that a change which makes any of them slower shows up
+ * before it is released.<br>
+ * The suite is run in the same way as a JMH benchmark: for each size
+ * and operation there are warm-up iterations, then measured iterations
+ * whose time per operation is reported as the mean with the fastest
+ * and slowest iteration. Results are consumed so the JIT can't remove
+ * the calls.
+ * <br>
+ * A tenth of the records are contacts and the rest are meetings, half
+ * past and half future. The data comes from a seeded
+ * {@link SyntheticData} and the CM reads the time from a
+ * {@link FakeTimeSource}, so every run uses the same names, dates and
+ * attendees and splits the meetings into past and future the same way.
+ * The arguments for the calls are chosen with a seeded random
+ * generator as well.
+ * <br>
+ * Operations which add records grow the CM. Below 10M records the CM
+ * is built again before each of their iterations, at 10M they add less
+ * than 1% to it.
+ * <br>
+ * Run from a scratch directory as the benchmark writes
+ * {@code contacts-bench.txt} there, with a large heap for 10M records,
+ * eg. {@code java -Xmx12g bench.ContactManagerBenchmark}<br>
+ * Optional arguments set the numbers of records (default 1000 100000 10000000).
+ *
+ * @author lmignot
+ */
+public final class ContactManagerBenchmark {
+
+    private static final int[] DEFAULT_SIZES = { 1_000, 100_000, 10_000_000 };
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 5;
+    private static final int OPS = 10_000;
+    private static final int SEARCH_OPS = 1_000;
+    private static final int FILE_WARMUP_ITERATIONS = 1;
+    private static final int FILE_MEASURED_ITERATIONS = 3;
+    private static final int CONTACT_SHARE = 10;
+    private static final int MAX_LOOKUP_IDS = 4;
+    private static final int FRAGMENT_LENGTH = 3;
+    private static final long SEED = SyntheticData.DEFAULT_SEED;
+    // 2030-01-01T00:00:00Z
+    private static final long BASE_TIME = 1_893_456_000_000L;
+    private static final String FILENAME = "contacts-bench.txt";
+
+    private static long sink;
+
+    private ContactManagerBenchmark() { }
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = (args.length > 0)
+            ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+            : DEFAULT_SIZES;
+        Path dataFile = FileSystems.getDefault().getPath(FILENAME);
+
+        System.out.printf("%-24s %10s %12s %12s %12s%n", "operation", "records", "ns/op", "min", "max");
+        for (int size : sizes) {
+            Files.deleteIfExists(dataFile);
+            Fixture fixture = new Fixture(size, dataFile);
+            boolean rebuild = (long) OPS * (WARMUP_ITERATIONS + MEASURED_ITERATIONS) * 100 > size;
+            Random rnd = new Random(SEED);
+
+            measure("getMeeting", size, OPS, i -> fixture.cm.getMeeting(fixture.anyMeeting(rnd)).getId());
+            measure("getPastMeeting", size, OPS, i -> fixture.cm.getPastMeeting(fixture.pastMeeting(rnd)).getId());
+            measure("getFutureMeeting", size, OPS,
+                i -> fixture.cm.getFutureMeeting(fixture.futureMeeting(rnd)).getId());
+            measure("getFutureMeetingList", size, OPS,
+                i -> fixture.cm.getFutureMeetingList(fixture.contact(rnd)).size());
+            measure("getPastMeetingListFor", size, OPS,
+                i -> fixture.cm.getPastMeetingListFor(fixture.contact(rnd)).size());
+            measure("getMeetingListOn", size, OPS,
+                i -> fixture.cm.getMeetingListOn(fixture.data.date(rnd.nextBoolean())).size());
+            measure("getContacts(int...)", size, OPS, i -> fixture.cm.getContacts(fixture.contactIds(rnd)).size());
+            measure("getContacts(String)", size, SEARCH_OPS,
+                i -> fixture.cm.getContacts(fixture.nameFragment(rnd)).size());
+
+            Fixture[] current = { fixture };
+            measureWrites("addNewContact", size, rebuild, current, dataFile,
+                f -> i -> f.cm.addNewContact(f.data.name(), f.data.notes()));
+            measureWrites("addFutureMeeting", size, rebuild, current, dataFile,
+                f -> i -> f.cm.addFutureMeeting(f.attendees(), f.data.date(false)));
+            measureWrites("addNewPastMeeting", size, rebuild, current, dataFile, f -> i -> {
+                f.cm.addNewPastMeeting(f.attendees(), f.data.date(true), f.data.notes());
+                return i;
+            });
+            measureWrites("addMeetingNotes", size, rebuild, current, dataFile, f -> i -> {
+                int id = f.pastMeeting(rnd);
+                f.cm.addMeetingNotes(id, f.data.notes());
+                return id;
+            });
+
+            ContactManager cm = current[0].cm;
+            measure("flush", size, 1, i -> {
+                cm.flush();
+                return i;
+            }, FILE_WARMUP_ITERATIONS, FILE_MEASURED_ITERATIONS);
+            measure("reload", size, 1, i -> newContactManager(dataFile).getContacts(1).size(),
+                FILE_WARMUP_ITERATIONS, FILE_MEASURED_ITERATIONS);
+        }
+        Files.deleteIfExists(dataFile);
+        System.out.println("(" + sink + ")");
+    }
+
+    /**
+     * Measures an operation which only reads, or whose changes need
+     * not be undone
+     */
+    private static void measure(String name, int size, int ops, Op op) {
+        measure(name, size, ops, op, WARMUP_ITERATIONS, MEASURED_ITERATIONS);
+    }
+
+    private static void measure(String name, int size, int ops, Op op, int warmups, int measured) {
+        double[] results = new double[measured];
+        for (int n = 0; n < warmups + measured; n++) {
+            double nsPerOp = iteration(ops, op);
+            if (n >= warmups) {
+                results[n - warmups] = nsPerOp;
+            }
+        }
+        report(name, size, results);
+    }
+
+    /**
+     * Measures an operation which adds records, building the CM again
+     * before each iteration if the records added would skew the results
+     *
+     * @param current Holds the CM, which is replaced when it is built again
+     */
+    private static void measureWrites(String name, int size, boolean rebuild, Fixture[] current, Path dataFile,
+                                      WriteOp write) throws IOException {
+        double[] results = new double[MEASURED_ITERATIONS];
+        for (int n = 0; n < WARMUP_ITERATIONS + MEASURED_ITERATIONS; n++) {
+            if (rebuild) {
+                Files.deleteIfExists(dataFile);
+                current[0] = new Fixture(size, dataFile);
+            }
+            double nsPerOp = iteration(OPS, write.on(current[0]));
+            if (n >= WARMUP_ITERATIONS) {
+                results[n - WARMUP_ITERATIONS] = nsPerOp;
+            }
+        }
+        report(name, size, results);
+    }
+
+    /**
+     * @return the mean time per operation in nanoseconds
+     */
+    private static double iteration(int ops, Op op) {
+        long result = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            result += op.run(i);
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += result;
+        return (double) elapsed / ops;
+    }
+
+    /**
+     * @return a CM which reads its data from the given file and whose clock does not move
+     */
+    private static ContactManager newContactManager(Path dataFile) {
+        return new ContactManagerImpl(new SnapshotStorage(dataFile), new FakeTimeSource(BASE_TIME));
+    }
+
+    private static void report(String name, int size, double[] results) {
+        System.out.printf("%-24s %,10d %,12.0f %,12.0f %,12.0f%n", name, size,
+            Arrays.stream(results).average().orElse(0),
+            Arrays.stream(results).min().orElse(0),
+            Arrays.stream(results).max().orElse(0));
+    }
+
+    /**
+     * A call to the CM
+     */
+    @FunctionalInterface
+    private interface Op {
+        /**
+         * @param i The number of the call within the iteration
+         * @return a value derived from the result, to be consumed
+         */
+        long run(int i);
+    }
+
+    /**
+     * A call which adds records to the CM of a fixture
+     */
+    @FunctionalInterface
+    private interface WriteOp {
+        Op on(Fixture fixture);
+    }
+
+    /**
+     * A CM populated with synthetic data, along with the IDs of its
+     * contacts and meetings to choose the arguments of calls from
+     */
+    private static final class Fixture {
+        private final ContactManager cm;
+        private final SyntheticData data;
+        private final List<Contact> contacts;
+        private final int[] pastIds;
+        private final int[] futureIds;
+
+        /**
+         * Builds a CM with the given number of records
+         */
+        private Fixture(int size, Path dataFile) {
+            cm = newContactManager(dataFile);
+            data = new SyntheticData(SEED, BASE_TIME);
+            int contactCount = Math.max(1, size / CONTACT_SHARE);
+            int meetingCount = size - contactCount;
+            contacts = data.addContacts(cm, contactCount);
+            data.addMeetings(cm, contacts, meetingCount);
+
+            // a single thread adding to a new CM is given consecutive IDs
+            int[] past = new int[meetingCount];
+            int[] future = new int[meetingCount];
+            int pastCount = 0;
+            int futureCount = 0;
+            for (int id = 1; pastCount + futureCount < meetingCount; id++) {
+                Meeting m = cm.getMeeting(id);
+                if (m instanceof PastMeeting) {
+                    past[pastCount++] = id;
+                } else if (m != null) {
+                    future[futureCount++] = id;
+                }
+            }
+            pastIds = Arrays.copyOf(past, pastCount);
+            futureIds = Arrays.copyOf(future, futureCount);
+        }
+
+        private int anyMeeting(Random rnd) {
+            return rnd.nextBoolean() ? pastMeeting(rnd) : futureMeeting(rnd);
+        }
+
+        private int pastMeeting(Random rnd) {
+            return pastIds[rnd.nextInt(pastIds.length)];
+        }
+
+        private int futureMeeting(Random rnd) {
+            return futureIds[rnd.nextInt(futureIds.length)];
+        }
+
+        private Contact contact(Random rnd) {
+            return contacts.get(rnd.nextInt(contacts.size()));
+        }
+
+        private int[] contactIds(Random rnd) {
+            int[] ids = new int[1 + rnd.nextInt(Math.min(MAX_LOOKUP_IDS, contacts.size()))];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = contact(rnd).getId();
+            }
+            return ids;
+        }
+
+        private String nameFragment(Random rnd) {
+            String name = contact(rnd).getName();
+            int start = rnd.nextInt(name.length() - FRAGMENT_LENGTH + 1);
+            return name.substring(start, start + FRAGMENT_LENGTH);
+        }
+
+        private Set<Contact> attendees() {
+            return data.attendees(contacts);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package bench;
+
+import impl.ContactManagerImpl;
+import impl.GroupCommit;
+import impl.JournalStorage;
+import impl.TimeSource;
+import spec.ContactManager;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures durable writes per second, ie. {@code addNewContact()} calls
+ * which only return once the contact has been synced to the journal,
+ * from many threads at once against the group commit window.<br>
+ * The first row is the baseline without group commit, where each
+ * thread calls {@code flush()} after each change. Each following row
+ * uses a {@link GroupCommit} with a longer window; with a window of 0
+ * a batch is written as soon as the previous one has been, so it only
+ * holds the changes made while that one was being synced. For each row
+ * the benchmark reports the durable writes per second, the average
+ * number of changes per sync and the median and 99th percentile time
+ * a call waited.
+ * <br>
+ * Run from a scratch directory as the benchmark writes
+ * {@code contacts-bench.txt} and {@code contacts-bench.log} there,
+ * eg. {@code java bench.GroupCommitBenchmark}<br>
+ * Optional arguments set the number of threads (default 32) and the
+ * maximum batch size (default 1024).
+ *
+ * @author lmignot
+ */
+public final class GroupCommitBenchmark {
+
+    private static final long[] WINDOW_MICROS = { 0, 100, 250, 500, 1_000, 2_000, 5_000 };
+    private static final long RUN_MILLIS = 2_000;
+    private static final int MAX_SAMPLES_PER_THREAD = 100_000;
+    private static final String NAME = "Durable Contact";
+    private static final String NOTES = "Added by GroupCommitBenchmark";
+
+    private GroupCommitBenchmark() { }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = (args.length > 0) ? Integer.parseInt(args[0]) : 32;
+        int maxBatch = (args.length > 1) ? Integer.parseInt(args[1]) : 1024;
+        System.out.printf("%d threads, batches of up to %d changes%n", threads, maxBatch);
+        System.out.printf("%-18s %12s %12s %10s %10s%n", "", "writes/s", "per sync", "p50 us", "p99 us");
+
+        run(0L, threads, maxBatch, false);
+        run(null, threads, maxBatch, true);
+        for (long window : WINDOW_MICROS) {
+            run(window, threads, maxBatch, true);
+        }
+    }
+
+    /**
+     * Makes durable changes from a number of threads for a fixed time
+     *
+     * @param windowMicros The group commit window, or null for a flush after each change
+     * @param report Whether to print the results, false to warm up
+     */
+    private static void run(Long windowMicros, int threads, int maxBatch, boolean report)
+            throws IOException, InterruptedException {
+        Path dataFile = FileSystems.getDefault().getPath("contacts-bench.txt");
+        Path journalFile = FileSystems.getDefault().getPath("contacts-bench.log");
+        Files.deleteIfExists(dataFile);
+        Files.deleteIfExists(journalFile);
+        GroupCommit groupCommit = (windowMicros == null)
+            ? null : new GroupCommit(windowMicros, TimeUnit.MICROSECONDS, maxBatch);
+        ContactManagerImpl cm = new ContactManagerImpl(new JournalStorage(dataFile, journalFile), TimeSource.SYSTEM,
+            groupCommit);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch done = new CountDownLatch(threads);
+        long[][] latencies = new long[threads][MAX_SAMPLES_PER_THREAD];
+        int[] counts = new int[threads];
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers.add(new Thread(() -> {
+                long[] samples = latencies[thread];
+                int n = 0;
+                while (running.get()) {
+                    long start = System.nanoTime();
+                    add(cm, groupCommit == null);
+                    if (n < samples.length) {
+                        samples[n] = System.nanoTime() - start;
+                    }
+                    n++;
+                }
+                counts[thread] = n;
+                done.countDown();
+            }));
+        }
+        long syncsBefore = cm.getPersistenceStats().getSyncs();
+        workers.forEach(Thread::start);
+        Thread.sleep(RUN_MILLIS);
+        running.set(false);
+        done.await();
+        long syncs = cm.getPersistenceStats().getSyncs() - syncsBefore;
+
+        if (!report) {
+            return;
+        }
+        long writes = Arrays.stream(counts).asLongStream().sum();
+        long[] all = new long[0];
+        for (int t = 0; t < threads; t++) {
+            int n = Math.min(counts[t], MAX_SAMPLES_PER_THREAD);
+            long[] merged = Arrays.copyOf(all, all.length + n);
+            System.arraycopy(latencies[t], 0, merged, all.length, n);
+            all = merged;
+        }
+        Arrays.sort(all);
+        String label = (windowMicros == null) ? "flush() per change" : "window " + windowMicros + " us";
+        System.out.printf("%-18s %,12.0f %12.1f %,10.0f %,10.0f%n", label, writes * 1000.0 / RUN_MILLIS,
+            (syncs == 0) ? 0.0 : (double) writes / syncs, percentile(all, 50) / 1e3, percentile(all, 99) / 1e3);
+    }
+
+    private static void add(ContactManager cm, boolean flush) {
+        cm.addNewContact(NAME, NOTES);
+        if (flush) {
+            cm.flush();
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.round(p / 100 * (sorted.length - 1)))];
+    }
+}
@@ -0,0 +1,70 @@
+package bench;
+
+import impl.ContactManagerImpl;
+import spec.Contact;
+import spec.ContactManager;
+
+import java.util.Calendar;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Measures {@code getMeeting(int)} at increasing numbers of meetings.<br>
+ * With the meetings indexed by ID the time per lookup should stay
+ * flat as the CM grows, rather than growing with the number of meetings.
+ * <br>
+ * Run with a large heap, eg. {@code java -Xmx4g bench.MeetingLookupBenchmark}<br>
+ * An optional argument sets the largest number of meetings (default 10M).
+ *
+ * @author lmignot
+ */
+public final class MeetingLookupBenchmark {
+
+    private static final int LOOKUPS = 1_000_000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final long SEED = 42L;
+
+    private MeetingLookupBenchmark() { }
+
+    public static void main(String[] args) {
+        int max = (args.length > 0) ? Integer.parseInt(args[0]) : 10_000_000;
+
+        ContactManager cm = new ContactManagerImpl();
+        int contactId = cm.addNewContact("Wade Wilson", "Deadpool");
+        Set<Contact> contacts = cm.getContacts(contactId);
+        Calendar date = Calendar.getInstance();
+        date.add(Calendar.YEAR, 1);
+
+        int meetings = 0;
+        for (int size = 1_000; size <= max; size *= 10) {
+            while (meetings < size) {
+                cm.addFutureMeeting(contacts, date);
+                meetings++;
+            }
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                lookups(cm, meetings);
+            }
+            long start = System.nanoTime();
+            long found = lookups(cm, meetings);
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%,12d meetings: %6.1f ns/lookup (%d found)%n",
+                meetings, (double) elapsed / LOOKUPS, found);
+        }
+    }
+
+    /**
+     * Performs random lookups over the full range of meeting IDs
+     *
+     * @return the number of meetings found, to keep the JIT honest
+     */
+    private static long lookups(ContactManager cm, int meetings) {
+        Random rnd = new Random(SEED);
+        long found = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (cm.getMeeting(rnd.nextInt(meetings) + 1) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+}
@@ -0,0 +1,120 @@
+package bench;
+
+import impl.ContactImpl;
+import impl.FutureMeetingImpl;
+import impl.MeetingImpl;
+import spec.Contact;
+import spec.Meeting;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Compares the heap used by meetings, and the time taken to sort them,
+ * when each meeting holds its date as a Calendar and as epoch milliseconds.<br>
+ * {@link CalendarMeeting} has the same fields as {@link MeetingImpl} had
+ * when it held a Calendar and is sorted with the comparator it used.
+ * All meetings share one set of contacts so that only the meetings
+ * themselves are measured.
+ * <br>
+ * Run with a large heap, the Calendars alone take over 5GB at the
+ * default size, eg. {@code java -Xmx8g bench.MeetingMemoryBenchmark}<br>
+ * An optional argument sets the number of meetings (default 10M).
+ *
+ * @author lmignot
+ */
+public final class MeetingMemoryBenchmark {
+
+    private static final int SORT_ROUNDS = 3;
+    private static final long MINUTES_RANGE = 3L * 365 * 24 * 60;
+
+    private MeetingMemoryBenchmark() { }
+
+    public static void main(String[] args) {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 10_000_000;
+        Set<Contact> contacts = Collections.singleton(new ContactImpl(1, "Wade Wilson", "Deadpool"));
+
+        run("Calendar", count, contacts, true);
+        run("millis", count, contacts, false);
+    }
+
+    private static void run(String label, int count, Set<Contact> contacts, boolean calendar) {
+        long before = usedHeap();
+        List<Meeting> meetings = create(count, contacts, calendar);
+        long bytes = usedHeap() - before;
+
+        Comparator<Meeting> order = calendar
+            ? Comparator.comparing(Meeting::getDate).thenComparingInt(Meeting::getId)
+            : MeetingImpl.CHRONOLOGICAL;
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < SORT_ROUNDS; i++) {
+            Collections.shuffle(meetings, new Random(SyntheticData.DEFAULT_SEED));
+            long start = System.nanoTime();
+            meetings.sort(order);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-8s %,12d meetings: %5.0f bytes/meeting, sorted in %,7.0f ms%n",
+            label, meetings.size(), (double) bytes / count, best / 1e6);
+    }
+
+    /**
+     * Creates meetings at random whole minutes over three years
+     */
+    private static List<Meeting> create(int count, Set<Contact> contacts, boolean calendar) {
+        Random rnd = new Random(SyntheticData.DEFAULT_SEED);
+        Calendar base = Calendar.getInstance();
+        long now = base.getTimeInMillis();
+        List<Meeting> meetings = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            Calendar date = (Calendar) base.clone();
+            date.setTimeInMillis(now + (long) (rnd.nextDouble() * MINUTES_RANGE) * 60_000L);
+            meetings.add(calendar
+                ? new CalendarMeeting(i, date, contacts)
+                : new FutureMeetingImpl(i, date, contacts));
+        }
+        return meetings;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * A meeting holding its date as a Calendar
+     */
+    private static final class CalendarMeeting implements Meeting {
+        private final int id;
+        private final Calendar date;
+        private final Set<Contact> contacts;
+
+        private CalendarMeeting(int id, Calendar date, Set<Contact> contacts) {
+            this.id = id;
+            this.date = date;
+            this.contacts = contacts;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public Calendar getDate() {
+            return date;
+        }
+
+        @Override
+        public Set<Contact> getContacts() {
+            return contacts;
+        }
+    }
+}
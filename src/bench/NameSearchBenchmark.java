@@ -0,0 +1,73 @@
+package bench;
+
+import impl.ContactManagerImpl;
+import impl.ContactSpec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures {@code getContacts(String)} as a type-ahead search over a
+ * large contact book.<br>
+ * Each query is a prefix of a random contact's name, as typed one
+ * character at a time, and the average time per query is reported
+ * for each query length. Short queries match a large share of the
+ * contacts, so their time is dominated by building the result.
+ * <br>
+ * Run with a large heap, eg. {@code java -Xmx4g bench.NameSearchBenchmark}<br>
+ * An optional argument sets the number of contacts (default 1M).
+ *
+ * @author lmignot
+ */
+public final class NameSearchBenchmark {
+
+    private static final int QUERIES = 100;
+    private static final int MAX_QUERY_LENGTH = 16;
+    private static final int WARMUP_ROUNDS = 1;
+
+    private NameSearchBenchmark() { }
+
+    public static void main(String[] args) {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+
+        ContactManagerImpl cm = new ContactManagerImpl();
+        SyntheticData data = new SyntheticData(SyntheticData.DEFAULT_SEED);
+        List<ContactSpec> contacts = new ArrayList<>(count);
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = data.fullName();
+            names.add(name);
+            contacts.add(new ContactSpec(name, data.notes()));
+        }
+        cm.addNewContacts(contacts);
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            for (int length = 1; length <= MAX_QUERY_LENGTH; length++) {
+                search(cm, names, length);
+            }
+        }
+        for (int length = 1; length <= MAX_QUERY_LENGTH; length++) {
+            long start = System.nanoTime();
+            long found = search(cm, names, length);
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%2d chars: %9.1f us/query, %,10.0f matches/query%n",
+                length, elapsed / 1e3 / QUERIES, (double) found / QUERIES);
+        }
+    }
+
+    /**
+     * Searches for prefixes of random names
+     *
+     * @return the total number of contacts found
+     */
+    private static long search(ContactManagerImpl cm, List<String> names, int length) {
+        Random rnd = new Random(SyntheticData.DEFAULT_SEED);
+        long found = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            String name = names.get(rnd.nextInt(names.size()));
+            found += cm.getContacts(name.substring(0, Math.min(length, name.length()))).size();
+        }
+        return found;
+    }
+}
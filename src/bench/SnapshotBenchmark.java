@@ -0,0 +1,93 @@
+package bench;
+
+import impl.ContactManagerImpl;
+import spec.Contact;
+import spec.ContactManager;
+import spec.Meeting;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compares {@code flush()} and start-up with the binary snapshot format
+ * against the Java serialization format used by earlier versions.<br>
+ * Run from a scratch directory as the benchmark writes {@code contacts.txt}
+ * there, eg. {@code java -Xmx12g bench.SnapshotBenchmark 1000000 5000000}<br>
+ * The arguments are the number of contacts and meetings (default 1M and 5M).
+ *
+ * @author lmignot
+ */
+public final class SnapshotBenchmark {
+
+    private static final String LEGACY_FILENAME = "contacts-legacy.bin";
+
+    private SnapshotBenchmark() { }
+
+    public static void main(String[] args) throws IOException, ClassNotFoundException {
+        int contactCount = (args.length > 0) ? Integer.parseInt(args[0]) : 1_000_000;
+        int meetingCount = (args.length > 1) ? Integer.parseInt(args[1]) : 5_000_000;
+        Path dataFile = FileSystems.getDefault().getPath("contacts.txt");
+        Path legacyFile = FileSystems.getDefault().getPath(LEGACY_FILENAME);
+        Files.deleteIfExists(dataFile);
+
+        ContactManager cm = new ContactManagerImpl();
+        SyntheticData data = new SyntheticData(SyntheticData.DEFAULT_SEED);
+        List<Contact> contacts = data.addContacts(cm, contactCount);
+        data.addMeetings(cm, contacts, meetingCount);
+        System.out.printf("%,d contacts, %,d meetings%n", contactCount, meetingCount);
+
+        long start = System.nanoTime();
+        cm.flush();
+        report("binary flush", start, dataFile);
+
+        start = System.nanoTime();
+        cm = new ContactManagerImpl();
+        report("binary load", start, dataFile);
+
+        Set<Contact> contactSet = new HashSet<>(cm.getContacts(""));
+        List<Meeting> meetings = new ArrayList<>(meetingCount);
+        for (int id = 1; id <= meetingCount; id++) {
+            meetings.add(cm.getMeeting(id));
+        }
+        cm = null;
+
+        start = System.nanoTime();
+        try (ObjectOutputStream out = new ObjectOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(legacyFile)))) {
+            out.writeObject(contactSet);
+            out.writeObject(meetings);
+            out.writeObject(meetingCount + 1);
+            out.writeObject(contactCount + 1);
+        }
+        report("legacy flush", start, legacyFile);
+
+        contactSet = null;
+        meetings = null;
+        start = System.nanoTime();
+        try (ObjectInputStream in = new ObjectInputStream(
+            new BufferedInputStream(Files.newInputStream(legacyFile)))) {
+            for (int i = 0; i < 4; i++) {
+                in.readObject();
+            }
+        }
+        report("legacy load", start, legacyFile);
+
+        Files.deleteIfExists(dataFile);
+        Files.deleteIfExists(legacyFile);
+    }
+
+    private static void report(String label, long start, Path file) throws IOException {
+        System.out.printf("%-14s %8.1f ms %,15d bytes%n",
+            label, (System.nanoTime() - start) / 1e6, Files.size(file));
+    }
+}
@@ -0,0 +1,161 @@
+package bench;
+
+import spec.Contact;
+import spec.ContactManager;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates reproducible synthetic contacts and meetings for benchmarks.<br>
+ * All randomness comes from a seeded {@link Random}, so the same seed
+ * and sizes always produce the same names, attendees and notes.
+ * Meeting dates are relative to the time of the run, or to a given
+ * time so that the dates are reproducible as well.
+ *
+ * @author lmignot
+ */
+public final class SyntheticData {
+
+    public static final long DEFAULT_SEED = 42L;
+
+    private static final String[] FIRST_NAMES = {
+        "Wade", "Peter", "Jessica", "Bruce", "Clark", "Diana", "Matt", "Natasha",
+        "Steve", "Tony", "Wanda", "Luke", "Carol", "Barry", "Hal", "Selina"
+    };
+    private static final String[] LAST_NAMES = {
+        "Wilson", "Quill", "Jones", "Wayne", "Kent", "Prince", "Murdock", "Romanoff",
+        "Rogers", "Stark", "Maximoff", "Cage", "Danvers", "Allen", "Jordan", "Kyle"
+    };
+    private static final String[] SYLLABLES = {
+        "an", "ber", "cor", "dal", "en", "fro", "gan", "hol", "is", "jen", "kar", "lo",
+        "mor", "nik", "ov", "pel", "quin", "ros", "sten", "tor", "ul", "ver", "wes", "zy"
+    };
+    private static final int MAX_SYLLABLES = 4;
+    private static final int MAX_ATTENDEES = 4;
+    private static final int DAYS_RANGE = 3 * 365;
+
+    private final Random rnd;
+    private final long baseTime;
+
+    /**
+     * @param seed The seed for all generated data
+     */
+    public SyntheticData(long seed) {
+        this(seed, System.currentTimeMillis());
+    }
+
+    /**
+     * @param seed The seed for all generated data
+     * @param baseTime The time that meeting dates are relative to, in epoch
+     *                 milliseconds, eg. the time of a {@link impl.FakeTimeSource}
+     */
+    public SyntheticData(long seed, long baseTime) {
+        rnd = new Random(seed);
+        this.baseTime = baseTime;
+    }
+
+    /**
+     * @return a random contact name, eg. "Jessica Stark 1234"
+     */
+    public String name() {
+        return FIRST_NAMES[rnd.nextInt(FIRST_NAMES.length)] + " "
+            + LAST_NAMES[rnd.nextInt(LAST_NAMES.length)] + " " + rnd.nextInt(10_000);
+    }
+
+    /**
+     * A name with a generated surname, so that names are about as
+     * varied as in a real contact book.<br>
+     * {@link #name()} only has 256 first and last name combinations,
+     * which is enough for most benchmarks but makes most substrings
+     * match a large share of the contacts.
+     *
+     * @return a random contact name, eg. "Jessica Dalverov"
+     */
+    public String fullName() {
+        StringBuilder surname = new StringBuilder();
+        int syllables = 2 + rnd.nextInt(MAX_SYLLABLES - 1);
+        for (int i = 0; i < syllables; i++) {
+            surname.append(SYLLABLES[rnd.nextInt(SYLLABLES.length)]);
+        }
+        surname.setCharAt(0, Character.toUpperCase(surname.charAt(0)));
+        return FIRST_NAMES[rnd.nextInt(FIRST_NAMES.length)] + " " + surname;
+    }
+
+    /**
+     * @return some random notes
+     */
+    public String notes() {
+        return "Notes " + Long.toHexString(rnd.nextLong());
+    }
+
+    /**
+     * @param past Whether the date should be in the past or the future
+     * @return a random date up to three years away from the base time, at a whole minute
+     */
+    public Calendar date(boolean past) {
+        Calendar date = Calendar.getInstance();
+        date.setTimeInMillis(baseTime);
+        date.set(Calendar.SECOND, 0);
+        date.set(Calendar.MILLISECOND, 0);
+        int minutes = 1 + rnd.nextInt(DAYS_RANGE * 24 * 60);
+        date.add(Calendar.MINUTE, past ? -minutes : minutes + 1);
+        return date;
+    }
+
+    /**
+     * @param contacts The contacts to choose from
+     * @return between 1 and 4 distinct random contacts
+     */
+    public Set<Contact> attendees(List<Contact> contacts) {
+        int count = 1 + rnd.nextInt(Math.min(MAX_ATTENDEES, contacts.size()));
+        Set<Contact> attendees = new HashSet<>();
+        while (attendees.size() < count) {
+            attendees.add(contacts.get(rnd.nextInt(contacts.size())));
+        }
+        return attendees;
+    }
+
+    /**
+     * Adds contacts to a CM
+     *
+     * @param cm The CM to populate
+     * @param count The number of contacts to add
+     * @return the new contacts, in the order they were added
+     */
+    public List<Contact> addContacts(ContactManager cm, int count) {
+        Set<Integer> ids = new HashSet<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            ids.add(cm.addNewContact(name(), notes()));
+        }
+        List<Contact> contacts = new ArrayList<>(count);
+        cm.getContacts("").stream()
+            .filter(c -> ids.contains(c.getId()))
+            .sorted(Comparator.comparingInt(Contact::getId))
+            .forEach(contacts::add);
+        return contacts;
+    }
+
+    /**
+     * Adds meetings between the given contacts to a CM,
+     * roughly half in the past and half in the future.
+     *
+     * @param cm The CM to populate
+     * @param contacts The contacts who attend the meetings
+     * @param count The number of meetings to add
+     */
+    public void addMeetings(ContactManager cm, List<Contact> contacts, int count) {
+        for (int i = 0; i < count; i++) {
+            if (rnd.nextBoolean()) {
+                cm.addNewPastMeeting(attendees(contacts), date(true), notes());
+            } else {
+                cm.addFutureMeeting(attendees(contacts), date(false));
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package impl;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * A data file which is always replaced atomically.<br>
+ * New contents are written and synced to a temporary file in the same
+ * directory, which is then renamed over the old file, so a crash or
+ * error mid-write leaves the previous contents intact. The previous
+ * generation is also kept in a backup file, which is read if the
+ * file itself can not be.
+ *
+ * @author lmignot
+ */
+final class AtomicFile {
+
+    static final String TEMP_SUFFIX = ".tmp";
+    static final String BACKUP_SUFFIX = ".bak";
+
+    private final Path path;
+    private final Path tempPath;
+    private final Path backupPath;
+    private final StorageMetrics metrics;
+
+    /**
+     * @param path The data file
+     * @param metrics Where the bytes read and written are recorded
+     * @throws NullPointerException if the path is null
+     */
+    AtomicFile(Path path, StorageMetrics metrics) {
+        this.path = Objects.requireNonNull(path).toAbsolutePath();
+        this.tempPath = sibling(TEMP_SUFFIX);
+        this.backupPath = sibling(BACKUP_SUFFIX);
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return the data file
+     */
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return true if the data file exists
+     */
+    boolean exists() {
+        return Files.exists(path);
+    }
+
+    /**
+     * @return the size of the data file in bytes, or -1 if there is none
+     * @throws IOException if the size can not be read
+     */
+    long size() throws IOException {
+        return exists() ? Files.size(path) : -1;
+    }
+
+    /**
+     * Reads the data file, falling back to the previous
+     * generation if the data file can't be read. An unchecked
+     * exception from the reader, eg. on a corrupt file it does not
+     * expect, is taken as the file not being readable.
+     *
+     * @param reader Reads a file
+     * @param <T> The type of data read
+     * @return the data read
+     * @throws IOException if neither the file nor its backup can be read
+     */
+    <T> T read(Reader<T> reader) throws IOException {
+        Path file = path;
+        T data;
+        try {
+            data = readFile(reader, file);
+        } catch (IOException ex) {
+            if (!Files.exists(backupPath)) {
+                throw ex;
+            }
+            ex.printStackTrace();
+            file = backupPath;
+            data = readFile(reader, file);
+        }
+        metrics.read(Files.size(file));
+        return data;
+    }
+
+    private static <T> T readFile(Reader<T> reader, Path file) throws IOException {
+        try {
+            return reader.read(file);
+        } catch (RuntimeException ex) {
+            throw new IOException("Invalid data file " + file, ex);
+        }
+    }
+
+    /**
+     * Atomically replaces the data file with new contents,
+     * keeping the previous generation as the backup file.
+     *
+     * @param writer Writes the new contents to a channel, which is
+     *               synced and closed afterwards
+     * @param records The number of records the writer writes, for the metrics
+     * @throws IOException if the contents can not be written, in which
+     *                     case the data file is unchanged
+     */
+    void write(Writer writer, long records) throws IOException {
+        long syncNanos;
+        try (FileChannel ch = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long start = System.nanoTime();
+            writer.write(ch);
+            long written = System.nanoTime();
+            metrics.written(ch.size(), records, written - start);
+            ch.force(true);
+            syncNanos = System.nanoTime() - written;
+        } catch (IOException | RuntimeException ex) {
+            // the write's own error is the one reported, a failure to clean up is added to it
+            try {
+                Files.deleteIfExists(tempPath);
+            } catch (IOException deleteEx) {
+                ex.addSuppressed(deleteEx);
+            }
+            throw ex;
+        }
+
+        if (Files.exists(path)) {
+            keepBackup();
+        }
+        try {
+            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        long start = System.nanoTime();
+        syncDirectory();
+        metrics.synced(syncNanos + System.nanoTime() - start);
+    }
+
+    /**
+     * Makes the current data file the backup, without ever removing
+     * the data file itself. A hard link is used where possible,
+     * otherwise the file is copied.
+     */
+    private void keepBackup() throws IOException {
+        Files.deleteIfExists(backupPath);
+        try {
+            Files.createLink(backupPath, path);
+        } catch (IOException | UnsupportedOperationException ex) {
+            Files.copy(path, backupPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Syncs the directory so the rename itself is durable.
+     * Not all platforms allow a directory to be opened, in which
+     * case the rename is left to the file system.
+     */
+    private void syncDirectory() {
+        try (FileChannel dir = FileChannel.open(path.getParent(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException ex) {
+            // not supported on this platform
+        }
+    }
+
+    private Path sibling(String suffix) {
+        return path.resolveSibling(path.getFileName() + suffix);
+    }
+
+    /**
+     * Reads one generation of the file
+     */
+    interface Reader<T> {
+        T read(Path file) throws IOException;
+    }
+
+    /**
+     * Writes the new contents of the file
+     */
+    interface Writer {
+        void write(FileChannel ch) throws IOException;
+    }
+}
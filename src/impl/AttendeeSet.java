@@ -0,0 +1,122 @@
+package impl;
+
+import spec.Contact;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+
+/**
+ * An unmodifiable view of a meeting's contacts, backed by the sorted
+ * array of their IDs.<br>
+ * The contacts are looked up by ID as they are needed rather than
+ * being held by the meeting, so a meeting costs four bytes per
+ * contact instead of a hash set entry.
+ * As with a set of contacts, {@link #contains(Object)} only matches
+ * the same contact object, not another contact with the same ID.
+ *
+ * @author lmignot
+ */
+final class AttendeeSet extends AbstractSet<Contact> {
+
+    private final int[] ids;
+    private final IntFunction<Contact> directory;
+
+    /**
+     * @param ids The contacts' IDs in ascending order, without duplicates
+     * @param directory Looks up a contact by ID
+     */
+    AttendeeSet(int[] ids, IntFunction<Contact> directory) {
+        this.ids = ids;
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the sorted IDs of some contacts
+     *
+     * @param contacts The contacts
+     * @return their IDs in ascending order
+     * @throws IllegalArgumentException if two of the contacts have the same ID
+     */
+    static int[] idsOf(Collection<Contact> contacts) {
+        int[] ids = new int[contacts.size()];
+        int i = 0;
+        for (Contact c : contacts) {
+            ids[i++] = c.getId();
+        }
+        return sorted(ids);
+    }
+
+    /**
+     * Sorts contact IDs in place, eg. as read from a data file
+     *
+     * @param ids The IDs
+     * @return the same array, in ascending order
+     * @throws IllegalArgumentException if an ID appears more than once
+     */
+    static int[] sorted(int[] ids) {
+        Arrays.sort(ids);
+        for (int i = 1; i < ids.length; i++) {
+            if (ids[i] == ids[i - 1]) {
+                throw new IllegalArgumentException();
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Creates a directory which only holds the given contacts, for
+     * meetings which are not created by a contact manager.
+     *
+     * @param contacts The contacts, with distinct IDs
+     * @return a lookup from ID to contact, returning null for other IDs
+     */
+    static IntFunction<Contact> directoryOf(Collection<Contact> contacts) {
+        Contact[] sorted = contacts.toArray(new Contact[0]);
+        Arrays.sort(sorted, Comparator.comparingInt(Contact::getId));
+        int[] ids = new int[sorted.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = sorted[i].getId();
+        }
+        return id -> {
+            int i = Arrays.binarySearch(ids, id);
+            return (i < 0) ? null : sorted[i];
+        };
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Contact)) {
+            return false;
+        }
+        int id = ((Contact) o).getId();
+        return Arrays.binarySearch(ids, id) >= 0 && directory.apply(id) == o;
+    }
+
+    @Override
+    public Iterator<Contact> iterator() {
+        return new Iterator<Contact>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < ids.length;
+            }
+
+            @Override
+            public Contact next() {
+                if (!hasNext()) { throw new NoSuchElementException(); }
+                return directory.apply(ids[next++]);
+            }
+        };
+    }
+}
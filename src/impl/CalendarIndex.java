@@ -0,0 +1,102 @@
+package impl;
+
+import spec.Meeting;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * An index of meetings bucketed by the day on which they take place.<br>
+ * Days are numbered from the epoch (1970-01-01 = day 0) in the time
+ * zone of the meeting's own calendar, which matches comparing the
+ * YEAR, MONTH and DAY_OF_MONTH fields of two calendars.
+ * Meetings within a day are kept in chronological order.
+ *
+ * @see MeetingImpl#CHRONOLOGICAL
+ *
+ * @author lmignot
+ */
+final class CalendarIndex {
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private final NavigableMap<Long, NavigableSet<Meeting>> days = new TreeMap<>();
+
+    /**
+     * Returns the day number of a calendar's date in its own time zone
+     *
+     * @param date The calendar
+     * @return the number of days between the epoch and the calendar's local date
+     */
+    static long epochDay(Calendar date) {
+        return epochDay(date.getTimeInMillis(), date.getTimeZone());
+    }
+
+    /**
+     * Returns the day number of an instant in a time zone
+     *
+     * @param millis The instant in epoch milliseconds
+     * @param zone The time zone
+     * @return the number of days between the epoch and the local date
+     */
+    static long epochDay(long millis, TimeZone zone) {
+        return Math.floorDiv(millis + zone.getOffset(millis), MILLIS_PER_DAY);
+    }
+
+    /**
+     * Adds a meeting to the bucket for its day
+     *
+     * @param meeting The meeting to index
+     */
+    void add(Meeting meeting) {
+        days.computeIfAbsent(MeetingImpl.epochDayOf(meeting), d -> new TreeSet<>(MeetingImpl.CHRONOLOGICAL))
+            .add(meeting);
+    }
+
+    /**
+     * Removes a meeting from the bucket for its day, and the bucket
+     * once it is empty so that days which no longer have meetings
+     * are not kept
+     *
+     * @param meeting The meeting to remove
+     */
+    void remove(Meeting meeting) {
+        long epochDay = MeetingImpl.epochDayOf(meeting);
+        NavigableSet<Meeting> day = days.get(epochDay);
+        if (day != null && day.remove(meeting) && day.isEmpty()) {
+            days.remove(epochDay);
+        }
+    }
+
+    /**
+     * @param day The epoch day
+     * @return the meetings on that day in chronological order
+     */
+    NavigableSet<Meeting> on(long day) {
+        NavigableSet<Meeting> meetings = days.get(day);
+        return (meetings == null)
+            ? Collections.emptyNavigableSet()
+            : Collections.unmodifiableNavigableSet(meetings);
+    }
+
+    /**
+     * @param fromDay The first epoch day, inclusive
+     * @param toDay The last epoch day, inclusive
+     * @return the meetings on those days in chronological order
+     * @throws IllegalArgumentException if {@code fromDay} is after {@code toDay}
+     */
+    List<Meeting> between(long fromDay, long toDay) {
+        Collection<NavigableSet<Meeting>> range = days.subMap(fromDay, true, toDay, true).values();
+        List<Meeting> result = new ArrayList<>();
+        range.forEach(result::addAll);
+        return result;
+    }
+}
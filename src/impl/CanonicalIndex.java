@@ -0,0 +1,92 @@
+package impl;
+
+import spec.Meeting;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Groups meetings which are equal to each other, ie. at the same time
+ * with the same contacts, keyed by the meeting itself.<br>
+ * The meeting lists only include the first meeting, by ID, of each
+ * group, so duplicates are found once when a meeting is added rather
+ * than removed from every list that is returned.
+ * Most meetings have no duplicates, a group of one is stored as the
+ * meeting itself and larger groups as an array in ID order.
+ *
+ * @see MeetingImpl#equals(Object)
+ *
+ * @author lmignot
+ */
+final class CanonicalIndex {
+
+    private final Map<Meeting, Object> groups = new HashMap<>();
+
+    /**
+     * @param meeting The meeting to add
+     */
+    void add(Meeting meeting) {
+        Object group = groups.get(meeting);
+        if (group == null) {
+            groups.put(meeting, meeting);
+            return;
+        }
+        Meeting[] members = members(group);
+        int i = members.length;
+        Meeting[] added = Arrays.copyOf(members, i + 1);
+        while (i > 0 && added[i - 1].getId() > meeting.getId()) {
+            added[i] = added[i - 1];
+            i--;
+        }
+        added[i] = meeting;
+        groups.put(meeting, added);
+    }
+
+    /**
+     * Replaces a meeting with an updated version of itself, which
+     * must be equal to it, eg. when notes are added.
+     *
+     * @param previous The meeting currently in the index
+     * @param updated The meeting replacing it
+     */
+    void replace(Meeting previous, Meeting updated) {
+        // removed first, as put() would keep the previous meeting as the key
+        Object group = groups.remove(previous);
+        if (group instanceof Meeting[]) {
+            Meeting[] members = ((Meeting[]) group).clone();
+            for (int i = 0; i < members.length; i++) {
+                if (members[i] == previous) {
+                    members[i] = updated;
+                }
+            }
+            groups.put(updated, members);
+        } else {
+            groups.put(updated, updated);
+        }
+    }
+
+    /**
+     * @param meeting A meeting
+     * @param filter Which of the equal meetings to consider
+     * @return the meeting with the lowest ID of those which are equal to the
+     *         given meeting and match the filter, or null if there are none
+     */
+    Meeting first(Meeting meeting, Predicate<Meeting> filter) {
+        Object group = groups.get(meeting);
+        if (group == null) {
+            return null;
+        }
+        for (Meeting m : members(group)) {
+            if (filter.test(m)) {
+                return m;
+            }
+        }
+        return null;
+    }
+
+    private static Meeting[] members(Object group) {
+        return (group instanceof Meeting[]) ? (Meeting[]) group : new Meeting[] { (Meeting) group };
+    }
+}
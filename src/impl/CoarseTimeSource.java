@@ -0,0 +1,58 @@
+package impl;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A clock which is read from a field that a background thread
+ * updates at a fixed interval, eg. for high-rate imports where even
+ * reading the system clock for every meeting shows up.<br>
+ * The time can be behind the system clock by up to the interval, so
+ * a meeting up to that far in the past may be accepted as a future
+ * meeting, and a future meeting is converted to a past meeting up to
+ * that late.
+ * <br>
+ * The background thread is a daemon thread, it is stopped by {@link #close()}.
+ *
+ * @author lmignot
+ */
+public final class CoarseTimeSource implements TimeSource, AutoCloseable {
+
+    private final ScheduledExecutorService ticker;
+    private volatile long now;
+
+    /**
+     * @param intervalMillis How often the time is updated, in milliseconds
+     * @throws IllegalArgumentException if the interval is 0 or negative
+     */
+    public CoarseTimeSource(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException();
+        }
+        now = System.currentTimeMillis();
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cm-coarse-clock");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleAtFixedRate(() -> now = System.currentTimeMillis(),
+            intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the time at the last update
+     */
+    @Override
+    public long currentTimeMillis() {
+        return now;
+    }
+
+    /**
+     * Stops updating the time
+     */
+    @Override
+    public void close() {
+        ticker.shutdownNow();
+    }
+}
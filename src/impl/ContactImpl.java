@@ -2,23 +2,48 @@ package impl;
 
 import spec.Contact;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.function.BiConsumer;
 
 /**
- * Implementation of Contact interface.
+ * Implementation of Contact interface.<br>
+ * The notes are only held once, as the joined notes returned by
+ * {@link #getNotes()}, which are extended as notes are added rather
+ * than joined again on every call. {@link #getNoteList()} gives the
+ * individual notes from the same copy.
  *
  * @see Contact
  * @author lmignot
  */
 public class ContactImpl implements Contact, Serializable {
 
+    private static final long serialVersionUID = 4110736840242549630L;
+
+    /**
+     * The serialized form holds the notes as a list, as when they
+     * were held that way, so existing data files can still be read.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("contactId", int.class),
+        new ObjectStreamField("contactName", String.class),
+        new ObjectStreamField("notes", List.class)
+    };
+
     private final int contactId;
     private final String contactName;
-    private final List<String> notes;
+    private transient volatile Notes joinedNotes = Notes.NONE;
+    private transient volatile BiConsumer<ContactImpl, String> notesListener;
+    // the contact read by readObject, which replaces the one being read
+    private transient ContactImpl resolved;
 
     /**
      * Create a new Contact without notes
@@ -35,7 +60,6 @@ public class ContactImpl implements Contact, Serializable {
             throw new IllegalArgumentException();
         }
 
-        notes = new ArrayList<>();
         contactId = id;
         contactName = name;
     }
@@ -72,7 +96,19 @@ public class ContactImpl implements Contact, Serializable {
      */
     @Override
     public String getNotes() {
-        return notes.stream().collect(Collectors.joining("\n"));
+        return joinedNotes.toString();
+    }
+
+    /**
+     * Returns the contact's notes one by one, in the order they were
+     * added, rather than joined into a single string.<br>
+     * The list is unmodifiable and holds the notes the contact had when
+     * it was asked for, so it can be iterated while notes are added.
+     *
+     * @return the contact's notes
+     */
+    public List<String> getNoteList() {
+        return joinedNotes.asList();
     }
 
     /**
@@ -86,6 +122,124 @@ public class ContactImpl implements Contact, Serializable {
         if (note.equals("")) {
             throw new IllegalArgumentException("Notes cannot be empty");
         }
-        notes.add(note);
+        BiConsumer<ContactImpl, String> listener = notesListener;
+        if (listener == null) {
+            appendNote(note);
+        } else {
+            listener.accept(this, note);
+        }
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("contactId", contactId);
+        fields.put("contactName", contactName);
+        fields.put("notes", new ArrayList<>(getNoteList()));
+        out.writeFields();
+    }
+
+    /**
+     * Contacts read from data files written with Java serialization
+     * are created anew from the fields read, as the final fields can
+     * not be set here, and replace the contact being read.
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        try {
+            ContactImpl contact = new ContactImpl(fields.get("contactId", 0), (String) fields.get("contactName", null));
+            ((List<String>) fields.get("notes", null)).forEach(contact::appendNote);
+            resolved = contact;
+        } catch (RuntimeException ex) {
+            throw new InvalidObjectException("Invalid contact");
+        }
+    }
+
+    private Object readResolve() {
+        return resolved;
+    }
+
+    /**
+     * Adds a note without telling the listener
+     *
+     * @param note The note to add
+     */
+    synchronized void appendNote(String note) {
+        joinedNotes = joinedNotes.appended(note);
+    }
+
+    /**
+     * @param contact Any contact
+     * @return the contact's notes one by one, a contact which is not
+     *         one of these gives all its notes as a single note
+     */
+    static List<String> notesOf(Contact contact) {
+        if (contact instanceof ContactImpl) {
+            return ((ContactImpl) contact).getNoteList();
+        }
+        if (contact instanceof Frozen) {
+            return ((Frozen) contact).notes.asList();
+        }
+        String notes = contact.getNotes();
+        return notes.isEmpty() ? Collections.emptyList() : Collections.singletonList(notes);
+    }
+
+    /**
+     * Returns a copy of this contact which keeps the notes it has now,
+     * so that it can be written in the background while notes are
+     * added to this contact. Takes the same time however long the
+     * notes are, as they are shared rather than copied.
+     *
+     * @return a read-only copy of this contact
+     */
+    Contact frozen() {
+        return new Frozen(contactId, contactName, joinedNotes);
+    }
+
+    /**
+     * Sets a listener which adds the notes added after this point,
+     * the Contact Manager uses this to add and persist changes to its
+     * contacts while holding its lock.
+     *
+     * @param listener Called with this contact and the new note,
+     *                 must add the note with {@link #appendNote(String)}
+     */
+    void setNotesListener(BiConsumer<ContactImpl, String> listener) {
+        notesListener = listener;
+    }
+
+    /**
+     * A contact as it was at some point, notes can't be added to it
+     */
+    private static final class Frozen implements Contact {
+        private final int id;
+        private final String name;
+        private final Notes notes;
+
+        private Frozen(int id, String name, Notes notes) {
+            this.id = id;
+            this.name = name;
+            this.notes = notes;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getNotes() {
+            return notes.toString();
+        }
+
+        @Override
+        public void addNotes(String note) {
+            throw new UnsupportedOperationException();
+        }
     }
 }
@@ -2,11 +2,18 @@ package impl;
 
 import spec.*;
 
-import java.io.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.FileSystems;
-import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static java.util.Objects.requireNonNull;
 
@@ -16,10 +23,11 @@ import static java.util.Objects.requireNonNull;
  * <h3>Assumptions</h3>
  * <ul>
  *     <li>
- *     <strong>Date/Time:</strong> I've opted to update the application's
- *     internal calendar object whenever a date comparison is needed.
- *     eg. {@code addFutureMeeting()}, {@code addNewPastMeeting()},
- *     {@code addMeetingNotes()}<br>
+ *     <strong>Date/Time:</strong> Past and future are decided by
+ *     reading the CM's {@link TimeSource} whenever a date comparison is
+ *     needed, eg. {@code addFutureMeeting()}, {@code addNewPastMeeting()},
+ *     {@code addMeetingNotes()}, and before the meeting lists are
+ *     read.<br>
  *     This will only affect edge cases but it is worth noting.
  *     <br>
  *     For example, calling {@code addNewPastMeeting()} with a newly
@@ -32,12 +40,31 @@ import static java.util.Objects.requireNonNull;
  *     2<sup>31</sup> - 1 meetings &amp; contacts due to the spec
  *     calling for int as the ID type.<br>
  *     Ideally we'd use some sort of UNIQUE IDENTIFIER such as UUID,
- *     or we'd let a database handle it.
+ *     or we'd let a database handle it.<br>
+ *     IDs are allocated without locking, when several threads add
+ *     contacts or meetings at once each thread gets consecutive IDs
+ *     but there may be gaps between the IDs of different threads.
  *     </li>
  *     <li>
  *     <strong>Meeting equality:</strong> Meetings are considered
  *     equal IF and ONLY IF Meeting A is at the same time as Meeting B,
  *     AND Meeting A contains all contacts in Meeting B AND vice-versa.
+ *     Equal meetings each get their own ID, but the meeting lists only
+ *     include the one with the lowest ID.
+ *     </li>
+ *     <li>
+ *     <strong>Past and future meetings:</strong> A future meeting
+ *     becomes a past meeting, without notes, once its date has passed.
+ *     Future meetings are queued by date and converted when the CM is
+ *     next queried, so the lists are correct at any moment.
+ *     </li>
+ *     <li>
+ *     <strong>Thread safety:</strong> The CM can be shared between
+ *     threads. Queries hold a shared read lock so they run in parallel,
+ *     changes hold the exclusive write lock, as does {@code flush()}
+ *     while it takes a snapshot of the data, but not while writing it.
+ *     Lists and sets returned by the CM are copies so they can be used
+ *     without holding any lock.
  *     </li>
  * </ul>
  *
@@ -48,13 +75,31 @@ import static java.util.Objects.requireNonNull;
 public class ContactManagerImpl implements ContactManager {
 
     private static final String FILENAME = "contacts.txt";
+    private static final Predicate<Meeting> ANY_MEETING = m -> true;
 
-    private final Set<Contact> cmContacts;
-    private final List<Meeting> cmMeetings;
+    private final IdIndex<Contact> cmContacts;
+    private final IdIndex<Meeting> cmMeetings;
+    private final ContactMeetingIndex cmSchedules;
+    private final CalendarIndex cmCalendar;
+    private final CanonicalIndex cmCanonical;
+    private final Queue<Meeting> cmUpcoming;
+    private final NameIndex cmNames;
+    private final Storage cmStorage;
+    private final Lock cmReadLock;
+    private final Lock cmWriteLock;
+    private final TimeSource cmClock;
+    private final Flusher cmFlusher;
+    private final GroupCommit cmGroupCommit;
+    private final IntFunction<Contact> cmDirectory = this::attendee;
 
-    private Calendar cmDate;
-    private int nextMeetingId;
-    private int nextContactId;
+    private IdAllocator cmMeetingIds;
+    private IdAllocator cmContactIds;
+    private volatile boolean cmLoaded;
+    private volatile boolean cmChanged;
+    private volatile long cmNextTransition = Long.MAX_VALUE;
+    // the number of changes persisted so far, and as of the last flush written
+    private long cmChanges;
+    private volatile long cmFlushedChanges = -1;
 
     /**
      * As per the specification a ContactManager has one
@@ -62,44 +107,98 @@ public class ContactManagerImpl implements ContactManager {
      * if a data file exists, if it does we attempt to read in
      * the contents of meetings, contacts and the next ID for
      * new contacts &amp; meetings.<br>
+     * Data files in the Java serialization format written by earlier
+     * versions are also read, they are converted to the binary snapshot
+     * format the next time the CM is flushed.<br>
      * If there is no file, or there's an error reading the file
      * we initialise a new CM with default values and empty data
-     * structures.<br>
-     * This op is performed in the Constructor rather than another
-     * method as it is not possible to initialise final
-     * fields outside the constructor.
+     * structures.
+     *
+     * @see SnapshotStorage
      */
     public ContactManagerImpl() {
-        Set<Contact> tmpContacts = null;
-        List<Meeting> tmpMeetings = null;
-        int tmpNextMeetingId = -1;
-        int tmpNextContactId = -1;
-
-        if(Files.exists(FileSystems.getDefault().getPath(FILENAME))) {
-            try (ObjectInputStream in = new ObjectInputStream(
-                    new BufferedInputStream(
-                            new FileInputStream(FILENAME)
-                    )
-            )) {
-                tmpContacts = (Set<Contact>) in.readObject();
-                tmpMeetings = (List<Meeting>) in.readObject();
-                tmpNextMeetingId = (int) in.readObject();
-                tmpNextContactId = (int) in.readObject();
-            } catch (ClassNotFoundException | IOException ex) {
-                ex.printStackTrace();
-            }
-        }
+        this(new SnapshotStorage(FileSystems.getDefault().getPath(FILENAME)));
+    }
 
-        cmDate = Calendar.getInstance();
-        cmContacts = (tmpContacts == null) ? new HashSet<>() : tmpContacts;
-        cmMeetings = (tmpMeetings == null) ? new ArrayList<>() : tmpMeetings;
-        nextMeetingId = (tmpNextMeetingId == -1) ? 1 : tmpNextMeetingId;
-        nextContactId = (tmpNextContactId == -1) ? 1 : tmpNextContactId;
+    /**
+     * Creates a CM which loads and persists its data with the given
+     * storage strategy, eg. a {@link JournalStorage}.<br>
+     * As with {@link #ContactManagerImpl()}, if there's an error reading
+     * the data we initialise a new CM with empty data structures.<br>
+     * If the storage can read records one at a time, such as a
+     * {@link MappedStorage}, nothing is loaded yet: lookups by ID read
+     * from the storage, and the data is only loaded by the first
+     * method which needs the indexes.
+     *
+     * @param storage Where and how the CM's data is persisted
+     * @throws NullPointerException if the storage is null
+     */
+    public ContactManagerImpl(Storage storage) {
+        this(storage, TimeSource.SYSTEM);
+    }
+
+    /**
+     * Creates a CM which tells past from future meetings with the
+     * given clock, eg. a {@link CoarseTimeSource} for high-rate
+     * imports or a {@link FakeTimeSource} for tests.
+     *
+     * @see ContactManagerImpl#ContactManagerImpl(Storage)
+     * @param storage Where and how the CM's data is persisted
+     * @param clock Where the current time is read from
+     * @throws NullPointerException if the storage or the clock is null
+     */
+    public ContactManagerImpl(Storage storage, TimeSource clock) {
+        this(storage, clock, null);
+    }
+
+    /**
+     * Creates a CM whose changes are durable once the call making them
+     * returns: changes made by several threads within a window are
+     * written and synced together by a single flush, during which the
+     * callers wait. If the flush fails, the calls making those changes
+     * throw an {@link java.io.UncheckedIOException}: the changes were
+     * made, but may not be durable.
+     *
+     * @see ContactManagerImpl#ContactManagerImpl(Storage, TimeSource)
+     * @see GroupCommit
+     * @param storage Where and how the CM's data is persisted, eg. a {@link JournalStorage}
+     * @param clock Where the current time is read from
+     * @param groupCommit How changes are batched, or null for changes
+     *                    to only be durable once the CM is flushed
+     * @throws NullPointerException if the storage or the clock is null
+     */
+    public ContactManagerImpl(Storage storage, TimeSource clock, GroupCommit groupCommit) {
+        cmStorage = requireNonNull(storage);
+        cmClock = requireNonNull(clock);
+        cmGroupCommit = groupCommit;
+        cmContacts = new IdIndex<>();
+        cmMeetings = new IdIndex<>();
+        cmSchedules = new ContactMeetingIndex();
+        cmCalendar = new CalendarIndex();
+        cmCanonical = new CanonicalIndex();
+        cmUpcoming = new PriorityQueue<>(MeetingImpl.CHRONOLOGICAL);
+        cmNames = new NameIndex();
+        ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        cmReadLock = lock.readLock();
+        cmWriteLock = lock.writeLock();
+        cmFlusher = new Flusher(this::prepareFlush, storage.metrics());
+
+        boolean lazy = false;
+        try {
+            lazy = storage.openLazily();
+        } catch (IOException ex) {
+            storage.metrics().loadFailed();
+            ex.printStackTrace();
+        }
+        if (!lazy) {
+            ensureLoaded();
+        }
     }
 
     /**
      * @see ContactManager#addFutureMeeting(Set, Calendar)
      * @throws IllegalArgumentException if the meeting is set for a time in the past,
+     *                                  if there are no contacts,
      *                                  or if any contact is unknown / non-existent
      * @throws NullPointerException if the meeting or the date are null;
      */
@@ -107,15 +206,26 @@ public class ContactManagerImpl implements ContactManager {
     public int addFutureMeeting(Set<Contact> contacts, Calendar date) {
         requireNonNullArguments(contacts, date);
 
-        cmDate = Calendar.getInstance();
+        int id;
+        long change;
+        cmWriteLock.lock();
+        try {
+            ensureLoaded();
 
-        if (!date.after(cmDate) || !cmContacts.containsAll(contacts)) {
-            throw new IllegalArgumentException();
-        }
+            if (date.getTimeInMillis() <= cmClock.currentTimeMillis() || contacts.isEmpty()
+                    || !containsAll(contacts)) {
+                throw new IllegalArgumentException();
+            }
 
-        int id = nextMeetingId;
-        cmMeetings.add(new FutureMeetingImpl(id, date, contacts));
-        nextMeetingId++;
+            id = cmMeetingIds.next();
+            Meeting meeting = new FutureMeetingImpl(id, date.getTimeInMillis(), date.getTimeZone(),
+                AttendeeSet.idsOf(contacts), cmDirectory);
+            indexMeeting(meeting);
+            change = persist(() -> cmStorage.meetingAdded(meeting));
+        } finally {
+            cmWriteLock.unlock();
+        }
+        awaitDurable(change);
         return id;
     }
 
@@ -148,17 +258,45 @@ public class ContactManagerImpl implements ContactManager {
     }
 
     /**
+     * Meetings are indexed by ID so this is a constant time lookup,
+     * if the data hasn't been loaded yet only this meeting is read.
+     * A future meeting whose date has passed is returned as a past
+     * meeting without notes.
+     *
      * @see ContactManager#getMeeting(int)
      */
     @Override
     public Meeting getMeeting(int id) {
-        return cmMeetings.stream()
-            .filter(mtg -> mtg.getId() == id)
-            .findFirst()
-            .orElse(null);
+        if (cmLoaded) {
+            ensureCurrent();
+        }
+        cmReadLock.lock();
+        try {
+            if (cmLoaded) {
+                return cmMeetings.get(id);
+            }
+            Meeting mtg = null;
+            try {
+                mtg = cmStorage.loadMeeting(id);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            if (mtg != null) {
+                mtg.getContacts().forEach(this::listenForNotes);
+                if (!(mtg instanceof PastMeeting) && MeetingImpl.timeOf(mtg) <= cmClock.currentTimeMillis()) {
+                    mtg = PastMeetingImpl.withoutNotes(mtg);
+                }
+            }
+            return mtg;
+        } finally {
+            cmReadLock.unlock();
+        }
     }
 
     /**
+     * The contact's future meetings are already in chronological
+     * order in the per-contact index, so this only visits those meetings.
+     *
      * @see ContactManager#getFutureMeetingList(Contact)
      * @throws IllegalArgumentException if the contact does not exist
      * @throws NullPointerException if the contact is null
@@ -166,35 +304,69 @@ public class ContactManagerImpl implements ContactManager {
     @Override
     public List<Meeting> getFutureMeetingList(Contact contact) {
         requireNonNull(contact);
-        if (!cmContacts.contains(contact)) {
-            throw new IllegalArgumentException();
-        }
+        ensureCurrent();
+
+        cmReadLock.lock();
+        try {
+            if (!contains(contact)) {
+                throw new IllegalArgumentException();
+            }
 
-        return cmMeetings.stream()
-            .filter(m -> m.getContacts().contains(contact) && m instanceof FutureMeeting)
-            .sorted(Comparator.comparing(Meeting::getDate))
-            .distinct()
-            .collect(Collectors.toList());
+            return new ArrayList<>(cmSchedules.future(contact.getId()));
+        } finally {
+            cmReadLock.unlock();
+        }
     }
 
     /**
+     * Meetings are bucketed by day in the calendar index so this
+     * only visits the meetings on the requested day.
+     *
      * @see ContactManager#getMeetingListOn(Calendar)
      * @throws NullPointerException if the date is null
      */
     @Override
     public List<Meeting> getMeetingListOn(Calendar date) {
         requireNonNull(date);
+        ensureCurrent();
 
-        return cmMeetings.stream()
-            .filter(m -> m.getDate().get(Calendar.YEAR) == date.get(Calendar.YEAR) &&
-                    m.getDate().get(Calendar.MONTH) == date.get(Calendar.MONTH) &&
-                    m.getDate().get(Calendar.DAY_OF_MONTH) == date.get(Calendar.DAY_OF_MONTH))
-            .sorted(Comparator.comparing(Meeting::getDate))
-            .distinct()
-            .collect(Collectors.toList());
+        cmReadLock.lock();
+        try {
+            return new ArrayList<>(cmCalendar.on(CalendarIndex.epochDay(date)));
+        } finally {
+            cmReadLock.unlock();
+        }
     }
 
     /**
+     * Returns the list of meetings that are scheduled for, or that took
+     * place on, any day from {@code from} to {@code to} inclusive.<br>
+     * As with {@link #getMeetingListOn(Calendar)} only the date of each
+     * calendar is considered, the time of day is ignored.
+     * The list is chronologically sorted and does not contain any duplicates.
+     *
+     * @param from The first day of the range
+     * @param to The last day of the range
+     * @return the list of meetings (maybe empty)
+     * @throws IllegalArgumentException if {@code from} is on a later day than {@code to}
+     * @throws NullPointerException if either date is null
+     */
+    public List<Meeting> getMeetingsBetween(Calendar from, Calendar to) {
+        requireNonNullArguments(from, to);
+        ensureCurrent();
+
+        cmReadLock.lock();
+        try {
+            return cmCalendar.between(CalendarIndex.epochDay(from), CalendarIndex.epochDay(to));
+        } finally {
+            cmReadLock.unlock();
+        }
+    }
+
+    /**
+     * The contact's past meetings are already in chronological
+     * order in the per-contact index, so this only visits those meetings.
+     *
      * @see ContactManager#getPastMeetingListFor(Contact)
      * @throws IllegalArgumentException if the contact does not exist
      * @throws NullPointerException if the contact is null
@@ -202,36 +374,237 @@ public class ContactManagerImpl implements ContactManager {
     @Override
     public List<PastMeeting> getPastMeetingListFor(Contact contact) {
         requireNonNull(contact);
-        if (!cmContacts.contains(contact)) {
-            throw new IllegalArgumentException();
+        ensureCurrent();
+
+        cmReadLock.lock();
+        try {
+            if (!contains(contact)) {
+                throw new IllegalArgumentException();
+            }
+
+            return cmSchedules.past(contact.getId()).stream()
+                .map(m -> (PastMeeting) m)
+                .collect(Collectors.toList());
+        } finally {
+            cmReadLock.unlock();
         }
+    }
+
+    /**
+     * Returns a page of a contact's future meetings, in the same order
+     * as {@link #getFutureMeetingList(Contact)}.<br>
+     * The next page starts after the date and ID of the last meeting
+     * of the previous page rather than at an offset, so it is found
+     * directly in the per-contact index, and meetings added between
+     * pages do not cause any meeting to be skipped or repeated.
+     *
+     * @param contact one of the CM's contacts
+     * @param after the last meeting of the previous page, or null for the first page
+     * @param limit the maximum number of meetings in the page
+     * @return the page of meetings, empty if there are no more meetings
+     * @throws IllegalArgumentException if the contact does not exist or the limit is not positive
+     * @throws NullPointerException if the contact is null
+     */
+    public List<Meeting> getFutureMeetingPage(Contact contact, Meeting after, int limit) {
+        requireNonNull(contact);
+        requirePositive(limit);
+        ensureCurrent();
 
-        return cmMeetings.stream()
-            .filter(m -> m.getContacts().contains(contact) && m instanceof PastMeeting)
-            .map(m -> (PastMeeting) m)
-            .sorted(Comparator.comparing(Meeting::getDate))
-            .distinct()
-            .collect(Collectors.toList());
+        cmReadLock.lock();
+        try {
+            if (!contains(contact)) {
+                throw new IllegalArgumentException();
+            }
+            return page(cmSchedules.future(contact.getId()), after, limit);
+        } finally {
+            cmReadLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a page of a contact's past meetings, in the same order
+     * as {@link #getPastMeetingListFor(Contact)}.
+     *
+     * @see #getFutureMeetingPage(Contact, Meeting, int)
+     * @param contact one of the CM's contacts
+     * @param after the last meeting of the previous page, or null for the first page
+     * @param limit the maximum number of meetings in the page
+     * @return the page of meetings, empty if there are no more meetings
+     * @throws IllegalArgumentException if the contact does not exist or the limit is not positive
+     * @throws NullPointerException if the contact is null
+     */
+    public List<PastMeeting> getPastMeetingPageFor(Contact contact, Meeting after, int limit) {
+        requireNonNull(contact);
+        requirePositive(limit);
+        ensureCurrent();
+
+        cmReadLock.lock();
+        try {
+            if (!contains(contact)) {
+                throw new IllegalArgumentException();
+            }
+            return page(cmSchedules.past(contact.getId()), after, limit);
+        } finally {
+            cmReadLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a page of the meetings on a day, in the same order
+     * as {@link #getMeetingListOn(Calendar)}.
+     *
+     * @see #getFutureMeetingPage(Contact, Meeting, int)
+     * @param date the date
+     * @param after the last meeting of the previous page, or null for the first page
+     * @param limit the maximum number of meetings in the page
+     * @return the page of meetings, empty if there are no more meetings
+     * @throws IllegalArgumentException if the limit is not positive
+     * @throws NullPointerException if the date is null
+     */
+    public List<Meeting> getMeetingPageOn(Calendar date, Meeting after, int limit) {
+        requireNonNull(date);
+        requirePositive(limit);
+        ensureCurrent();
+
+        cmReadLock.lock();
+        try {
+            return page(cmCalendar.on(CalendarIndex.epochDay(date)), after, limit);
+        } finally {
+            cmReadLock.unlock();
+        }
+    }
+
+    /**
+     * Streams a contact's future meetings in chronological order.<br>
+     * The meetings are fetched a page at a time as the stream is
+     * consumed, no lock is held in between.
+     *
+     * @see #getFutureMeetingPage(Contact, Meeting, int)
+     * @param contact one of the CM's contacts
+     * @return a sequential stream of the meetings
+     * @throws IllegalArgumentException if the contact does not exist
+     * @throws NullPointerException if the contact is null
+     */
+    public Stream<Meeting> streamFutureMeetings(Contact contact) {
+        return new MeetingPager<>((after, limit) -> getFutureMeetingPage(contact, after, limit),
+            MeetingPager.DEFAULT_PAGE_SIZE).stream();
+    }
+
+    /**
+     * Streams a contact's past meetings in chronological order.
+     *
+     * @see #streamFutureMeetings(Contact)
+     * @param contact one of the CM's contacts
+     * @return a sequential stream of the meetings
+     * @throws IllegalArgumentException if the contact does not exist
+     * @throws NullPointerException if the contact is null
+     */
+    public Stream<PastMeeting> streamPastMeetingsFor(Contact contact) {
+        return new MeetingPager<>((after, limit) -> getPastMeetingPageFor(contact, after, limit),
+            MeetingPager.DEFAULT_PAGE_SIZE).stream();
+    }
+
+    /**
+     * Streams the meetings on a day in chronological order.
+     *
+     * @see #streamFutureMeetings(Contact)
+     * @param date the date
+     * @return a sequential stream of the meetings
+     * @throws NullPointerException if the date is null
+     */
+    public Stream<Meeting> streamMeetingsOn(Calendar date) {
+        return new MeetingPager<>((after, limit) -> getMeetingPageOn(date, after, limit),
+            MeetingPager.DEFAULT_PAGE_SIZE).stream();
     }
 
     /**
      * @see ContactManager#addNewPastMeeting(Set, Calendar, String)
-     * @throws IllegalArgumentException if the messages are empty or the date
-     *                                  provided is NOT in the past
+     * @throws IllegalArgumentException if the messages are empty, there are
+     *                                  no contacts or the date provided is NOT in the past
      */
     @Override
     public void addNewPastMeeting(Set<Contact> contacts, Calendar date, String text) {
         requireNonNullArguments(contacts,date,text);
 
-        cmDate = Calendar.getInstance();
+        long change;
+        cmWriteLock.lock();
+        try {
+            ensureLoaded();
 
-        if (!date.before(cmDate) || text.equals("") || !cmContacts.containsAll(contacts)) {
-            throw new IllegalArgumentException();
+            if (date.getTimeInMillis() >= cmClock.currentTimeMillis() || text.equals("") || contacts.isEmpty()
+                    || !containsAll(contacts)) {
+                throw new IllegalArgumentException();
+            }
+
+            int id = cmMeetingIds.next();
+            Meeting meeting = new PastMeetingImpl(id, date.getTimeInMillis(), date.getTimeZone(),
+                AttendeeSet.idsOf(contacts), cmDirectory, text);
+            indexMeeting(meeting);
+            change = persist(() -> cmStorage.meetingAdded(meeting));
+        } finally {
+            cmWriteLock.unlock();
         }
+        awaitDurable(change);
+    }
 
-        int id = nextMeetingId;
-        cmMeetings.add(new PastMeetingImpl(id, date, contacts, text));
-        nextMeetingId++;
+    /**
+     * Adds a batch of past and future meetings, eg. for a bulk import.<br>
+     * The whole batch is validated before any meeting is added, against
+     * a single reading of the clock, so either all of the meetings are
+     * added or none are. The meetings get consecutive IDs in the order
+     * of the list, unless other threads are adding meetings at the same time.
+     *
+     * @param meetings The new meetings' details
+     * @return the IDs of the new meetings, in the same order
+     * @throws IllegalArgumentException if any future meeting is not in the future,
+     *                                  any past meeting is not in the past,
+     *                                  or any contact is unknown / non-existent
+     * @throws NullPointerException if the list or any of its elements are null
+     */
+    public int[] addMeetings(List<MeetingSpec> meetings) {
+        requireNonNull(meetings);
+        Set<Contact> attendees = new HashSet<>();
+        for (MeetingSpec m : meetings) {
+            attendees.addAll(m.getContacts());
+        }
+
+        int[] ids;
+        long change = 0;
+        cmWriteLock.lock();
+        try {
+            ensureLoaded();
+            long now = cmClock.currentTimeMillis();
+
+            for (MeetingSpec m : meetings) {
+                long time = m.date().getTimeInMillis();
+                if (m.isPast() ? time >= now : time <= now) {
+                    throw new IllegalArgumentException();
+                }
+            }
+            if (!containsAll(attendees)) {
+                throw new IllegalArgumentException();
+            }
+
+            int first = cmMeetingIds.next(meetings.size());
+            cmMeetings.ensureCapacity(first + meetings.size() - 1);
+            ids = new int[meetings.size()];
+            for (int i = 0; i < ids.length; i++) {
+                MeetingSpec m = meetings.get(i);
+                Calendar date = m.date();
+                int[] contactIds = AttendeeSet.idsOf(m.getContacts());
+                ids[i] = first + i;
+                Meeting meeting = m.isPast()
+                    ? new PastMeetingImpl(ids[i], date.getTimeInMillis(), date.getTimeZone(), contactIds, cmDirectory,
+                        m.getNotes())
+                    : new FutureMeetingImpl(ids[i], date.getTimeInMillis(), date.getTimeZone(), contactIds, cmDirectory);
+                indexMeeting(meeting);
+                change = persist(() -> cmStorage.meetingAdded(meeting));
+            }
+        } finally {
+            cmWriteLock.unlock();
+        }
+        awaitDurable(change);
+        return ids;
     }
 
     /**
@@ -244,20 +617,24 @@ public class ContactManagerImpl implements ContactManager {
     public void addMeetingNotes(int id, String text) {
         requireNonNull(text);
 
-        cmDate = Calendar.getInstance();
+        long change;
+        cmWriteLock.lock();
+        try {
+            ensureLoaded();
+            long now = cmClock.currentTimeMillis();
+            advanceTo(now);
 
-        Meeting mtg = getMeeting(id);
-        if (mtg == null) { throw new IllegalArgumentException(); }
-        if (mtg.getDate().after(cmDate)) { throw new IllegalStateException(); }
+            Meeting mtg = cmMeetings.get(id);
+            if (mtg == null) { throw new IllegalArgumentException(); }
+            if (MeetingImpl.timeOf(mtg) > now) { throw new IllegalStateException(); }
 
-        StringJoiner sj = new StringJoiner("\n");
-        if (mtg instanceof PastMeeting && !((PastMeeting) mtg).getNotes().equals("")) {
-            sj.add(((PastMeeting) mtg).getNotes());
+            PastMeeting newMeeting = PastMeetingImpl.withNotes(mtg, text);
+            reindexMeeting(mtg, newMeeting);
+            change = persist(() -> cmStorage.meetingNotesAdded(id, text));
+        } finally {
+            cmWriteLock.unlock();
         }
-        sj.add(text);
-
-        PastMeeting newMeeting = new PastMeetingImpl(id, mtg.getDate(), mtg.getContacts(), sj.toString());
-        cmMeetings.set(id - 1, newMeeting);
+        awaitDurable(change);
     }
 
     /**
@@ -271,17 +648,69 @@ public class ContactManagerImpl implements ContactManager {
         if (name.equals("") || notes.equals("")) {
             throw new IllegalArgumentException();
         }
-        int id = nextContactId;
-        cmContacts.add(new ContactImpl(id, name, notes));
-        nextContactId++;
+
+        ensureLoaded();
+        // IDs are allocated without the lock, from a block reserved by this thread
+        int id = cmContactIds.next();
+        Contact contact = new ContactImpl(id, name, notes);
+
+        long change;
+        cmWriteLock.lock();
+        try {
+            indexContact(contact);
+            change = persist(() -> cmStorage.contactAdded(contact));
+        } finally {
+            cmWriteLock.unlock();
+        }
+        awaitDurable(change);
         return id;
     }
 
+    /**
+     * Adds a batch of contacts, eg. for a bulk import.<br>
+     * The contacts get consecutive IDs in the order of the list,
+     * unless other threads are adding contacts at the same time.
+     *
+     * @param contacts The new contacts' details
+     * @return the IDs of the new contacts, in the same order
+     * @throws NullPointerException if the list or any of its elements are null
+     */
+    public int[] addNewContacts(List<ContactSpec> contacts) {
+        requireNonNull(contacts);
+        contacts.forEach(Objects::requireNonNull);
+        ensureLoaded();
+
+        int first = cmContactIds.next(contacts.size());
+        int[] ids = new int[contacts.size()];
+        List<Contact> added = new ArrayList<>(contacts.size());
+        for (int i = 0; i < ids.length; i++) {
+            ContactSpec c = contacts.get(i);
+            ids[i] = first + i;
+            added.add(new ContactImpl(ids[i], c.getName(), c.getNotes()));
+        }
+
+        long change = 0;
+        cmWriteLock.lock();
+        try {
+            cmContacts.ensureCapacity(first + ids.length - 1);
+            for (Contact contact : added) {
+                indexContact(contact);
+                change = persist(() -> cmStorage.contactAdded(contact));
+            }
+        } finally {
+            cmWriteLock.unlock();
+        }
+        awaitDurable(change);
+        return ids;
+    }
+
     /**
      * As per spec, this method can be used to retrieve the
      * complete set of contacts, or a specific contact by name.<br>
      * This implementation returns a copy of the set rather
-     * than a reference to the internal set.
+     * than a reference to the internal set.<br>
+     * Names are indexed by n-gram, so only the contacts whose names
+     * contain every trigram of the search string are checked.
      *
      * @see ContactManager#getContacts(String)
      * @throws NullPointerException if the parameter is null
@@ -289,16 +718,29 @@ public class ContactManagerImpl implements ContactManager {
     @Override
     public Set<Contact> getContacts(String name) {
         requireNonNull(name);
+        ensureLoaded();
 
-        if(name.equals("")) {
-            return cmContacts.stream().collect(Collectors.toSet());
+        cmReadLock.lock();
+        try {
+            if(name.equals("")) {
+                return cmContacts.stream().collect(Collectors.toSet());
+            }
+            Collection<Contact> candidates = cmNames.candidates(name);
+            if (name.length() <= NameIndex.MAX_GRAM_LENGTH) {
+                // the n-gram's contacts all contain it, there's nothing to check
+                return new HashSet<>(candidates);
+            }
+            return candidates.stream()
+                .filter(c -> c.getName().contains(name))
+                .collect(Collectors.toSet());
+        } finally {
+            cmReadLock.unlock();
         }
-        return cmContacts.stream()
-            .filter(c -> c.getName().contains(name))
-            .collect(Collectors.toSet());
     }
 
     /**
+     * Contacts are indexed by ID, so this only looks up the given IDs.
+     *
      * @see ContactManager#getContacts(int...)
      * @throws IllegalArgumentException if no IDs are provided or if any of the provided
      *                                  IDs does not correspond to a real contact
@@ -308,9 +750,22 @@ public class ContactManagerImpl implements ContactManager {
     public Set<Contact> getContacts(int... ids) {
         requireNonNull(ids);
 
-        Set<Contact> result = cmContacts.stream()
-            .filter(c -> Arrays.stream(ids).parallel().anyMatch(i -> i == c.getId()))
-            .collect(Collectors.toSet());
+        Set<Contact> result;
+        cmReadLock.lock();
+        try {
+            if (!cmLoaded) {
+                return loadContacts(ids);
+            }
+            result = new HashSet<>();
+            for (int id : ids) {
+                Contact c = cmContacts.get(id);
+                if (c != null) {
+                    result.add(c);
+                }
+            }
+        } finally {
+            cmReadLock.unlock();
+        }
 
         if (result.size() == 0) {
             throw new IllegalArgumentException();
@@ -319,28 +774,485 @@ public class ContactManagerImpl implements ContactManager {
     }
 
     /**
+     * Reads contacts from the storage before the data has been loaded
+     *
+     * @see #getContacts(int...)
+     */
+    private Set<Contact> loadContacts(int... ids) {
+        Set<Contact> result = new HashSet<>();
+        for (int id : ids) {
+            try {
+                Contact c = cmStorage.loadContact(id);
+                if (c != null) {
+                    listenForNotes(c);
+                    result.add(c);
+                }
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException();
+        }
+        return result;
+    }
+
+    /**
+     * Makes all data durable with the CM's storage, by default this
+     * writes all contacts and meetings to the data file in the binary
+     * snapshot format.<br>
+     * The data is written once any flush already being written has
+     * finished. The write lock is only held while a consistent
+     * snapshot of the data is taken, so other threads carry on
+     * using the CM while it is written.
+     * If the data was never loaded and no contact's notes have
+     * changed, or nothing has changed since the last flush,
+     * there is nothing to write.
+     *
+     * @see Storage
      * @see ContactManager#flush()
      */
     @Override
     public void flush() {
         try {
-            Files.deleteIfExists(FileSystems.getDefault().getPath(FILENAME));
-        } catch(IOException ioEx) {
-            ioEx.printStackTrace();
+            cmFlusher.flush();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Flushes the CM in the background, on a writer thread, so that
+     * the caller does not wait for the data to be written.<br>
+     * A flush asked for while another is waiting to start is
+     * coalesced with it, so a burst of requests is served by a single
+     * write which includes every change made before it started.
+     * As with {@link #flush()}, errors are printed; they also complete
+     * the future exceptionally.
+     *
+     * @return a future completed once the changes made so far are
+     *         durable, eg. for callers which must confirm a change
+     *         has been saved
+     */
+    public CompletableFuture<Void> flushAsync() {
+        return cmFlusher.flushAsync();
+    }
+
+    /**
+     * Returns the number of contacts, without loading the data of a
+     * CM which was opened lazily, eg. for monitoring.
+     *
+     * @return the number of contacts, or -1 if the data has not been loaded yet
+     */
+    public int getContactCount() {
+        cmReadLock.lock();
+        try {
+            return cmLoaded ? cmContacts.size() : -1;
+        } finally {
+            cmReadLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of past and future meetings, without loading
+     * the data of a CM which was opened lazily.
+     *
+     * @return the number of meetings, or -1 if the data has not been loaded yet
+     */
+    public int getMeetingCount() {
+        cmReadLock.lock();
+        try {
+            return cmLoaded ? cmMeetings.size() : -1;
+        } finally {
+            cmReadLock.unlock();
+        }
+    }
+
+    /**
+     * @return the size in bytes of the data last written by {@link #flush()},
+     *         or -1 if there is none or it can not be read
+     */
+    public long getSnapshotSize() {
+        try {
+            return cmStorage.snapshotSize();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the statistics of loading and flushing the CM's data,
+     * eg. to alert when flushes take longer as the data grows.<br>
+     * Errors reading or writing the data are only printed by the CM,
+     * they are counted here as well.
+     *
+     * @return the CM's persistence statistics so far
+     */
+    public PersistenceStats getPersistenceStats() {
+        return cmStorage.metrics().stats();
+    }
+
+    /**
+     * Loads all data from the storage and builds the indexes,
+     * unless this has already been done.<br>
+     * Must not be called while holding the read lock, as the
+     * write lock is needed to load the data.
+     */
+    private void ensureLoaded() {
+        if (cmLoaded) {
+            return;
+        }
+        cmWriteLock.lock();
+        try {
+            if (cmLoaded) {
+                return;
+            }
+            long start = System.nanoTime();
+            Snapshot snapshot = Snapshot.EMPTY;
+            boolean loaded = false;
+            try {
+                snapshot = cmStorage.load(cmDirectory);
+                loaded = true;
+            } catch (IOException ex) {
+                cmStorage.metrics().loadFailed();
+                ex.printStackTrace();
+            }
+            snapshot.getContacts().forEach(this::indexContact);
+            snapshot.getMeetings().forEach(this::indexMeeting);
+            if (loaded) {
+                cmStorage.metrics().loaded(snapshot.size(), start);
+            }
+            cmMeetingIds = new IdAllocator(snapshot.getNextMeetingId());
+            cmContactIds = new IdAllocator(snapshot.getNextContactId());
+            cmLoaded = true;
+        } finally {
+            cmWriteLock.unlock();
+        }
+    }
+
+    /**
+     * Loads the data if need be, and converts the future meetings
+     * whose date has passed into past meetings.<br>
+     * Must not be called while holding the read lock.
+     */
+    private void ensureCurrent() {
+        ensureLoaded();
+        if (cmClock.currentTimeMillis() < cmNextTransition) {
+            return;
+        }
+        cmWriteLock.lock();
+        try {
+            advanceTo(cmClock.currentTimeMillis());
+        } finally {
+            cmWriteLock.unlock();
+        }
+    }
+
+    /**
+     * Converts the future meetings at or before a time into past
+     * meetings without notes, so that they move from the contacts'
+     * future meeting lists to their past meeting lists.<br>
+     * The future meetings are queued by date, so each conversion
+     * takes logarithmic time and the meetings which are still in the
+     * future are not visited. A queued meeting which has already been
+     * replaced, eg. by adding notes, is skipped.
+     * Must be called while holding the write lock.
+     *
+     * @param now The current time in epoch milliseconds
+     */
+    private void advanceTo(long now) {
+        Meeting next;
+        while ((next = cmUpcoming.peek()) != null && MeetingImpl.timeOf(next) <= now) {
+            cmUpcoming.poll();
+            if (cmMeetings.get(next.getId()) == next) {
+                reindexMeeting(next, PastMeetingImpl.withoutNotes(next));
+            }
+        }
+        cmNextTransition = (next == null) ? Long.MAX_VALUE : MeetingImpl.timeOf(next);
+    }
+
+    /**
+     * Takes what the storage needs to write to make the changes so far
+     * durable. Only the taking holds the write lock, the flush returned
+     * is written without it.<br>
+     * Called by the flusher, one flush at a time.
+     *
+     * @return the flush, or null if there is nothing to write
+     * @throws IOException if the flush can not be prepared
+     */
+    private Storage.Flush prepareFlush() throws IOException {
+        if (!cmLoaded && !cmChanged) {
+            return null;
+        }
+        cmWriteLock.lock();
+        try {
+            ensureLoaded();
+            long changes = cmChanges;
+            if (changes == cmFlushedChanges) {
+                return null;
+            }
+            Storage.Flush flush = cmStorage.prepareFlush(this::snapshot);
+            return () -> {
+                flush.write();
+                cmFlushedChanges = changes;
+            };
+        } finally {
+            cmWriteLock.unlock();
+        }
+    }
+
+    /**
+     * Takes a snapshot of the CM's current data, which does not change
+     * as the CM does: meetings are replaced rather than changed, and
+     * the contacts are copied with the notes they have now.<br>
+     * Must be called while holding the write lock.
+     *
+     * @return a snapshot of the CM's current data
+     */
+    private Snapshot snapshot() {
+        List<Contact> contacts = new ArrayList<>(cmContacts.size());
+        for (Contact c : cmContacts) {
+            contacts.add((c instanceof ContactImpl) ? ((ContactImpl) c).frozen() : c);
+        }
+        return new Snapshot(contacts, cmMeetings.stream().collect(Collectors.toList()),
+            cmContactIds.highWaterMark(), cmMeetingIds.highWaterMark());
+    }
+
+    /**
+     * @param contact A contact
+     * @return true if the contact is one of this CM's contacts
+     */
+    private boolean contains(Contact contact) {
+        return contact != null && cmContacts.get(contact.getId()) == contact;
+    }
+
+    /**
+     * Looks up a contact of a meeting created by this CM.<br>
+     * Meetings only hold their contacts' IDs, this is called when
+     * the contacts of a meeting are used, possibly without holding
+     * any lock, so it takes the read lock itself.
+     *
+     * @param id The contact's ID
+     * @return the contact
+     */
+    private Contact attendee(int id) {
+        cmReadLock.lock();
+        try {
+            return cmContacts.get(id);
+        } finally {
+            cmReadLock.unlock();
         }
+    }
 
-        try (ObjectOutputStream out = new ObjectOutputStream(
-            new BufferedOutputStream(
-                new FileOutputStream(FILENAME)
-            )
-        )) {
-            out.writeObject(cmContacts);
-            out.writeObject(cmMeetings);
-            out.writeObject(nextMeetingId);
-            out.writeObject(nextContactId);
+    /**
+     * @param contacts Some contacts
+     * @return true if all of the contacts are this CM's contacts
+     */
+    private boolean containsAll(Collection<Contact> contacts) {
+        for (Contact c : contacts) {
+            if (!contains(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a contact to the CM and listens for notes added to it later,
+     * so that they can be persisted.
+     *
+     * @param contact The contact to add
+     */
+    private void indexContact(Contact contact) {
+        cmContacts.put(contact.getId(), contact);
+        cmNames.add(contact);
+        listenForNotes(contact);
+    }
+
+    /**
+     * Adds and persists notes added to a contact
+     *
+     * @param contact The contact to listen to
+     */
+    private void listenForNotes(Contact contact) {
+        if (contact instanceof ContactImpl) {
+            ((ContactImpl) contact).setNotesListener((c, note) -> {
+                long change;
+                cmWriteLock.lock();
+                try {
+                    c.appendNote(note);
+                    cmChanged = true;
+                    change = persist(() -> cmStorage.contactNotesAdded(c, note));
+                } finally {
+                    cmWriteLock.unlock();
+                }
+                awaitDurable(change);
+            });
+        }
+    }
+
+    /**
+     * Adds a new meeting to the ID index, and to the per-contact and
+     * calendar indexes if it is the first of the meetings equal to it
+     *
+     * @param meeting The meeting to add
+     */
+    private void indexMeeting(Meeting meeting) {
+        cmMeetings.put(meeting.getId(), meeting);
+        if (!(meeting instanceof PastMeeting)) {
+            cmUpcoming.add(meeting);
+            cmNextTransition = Math.min(cmNextTransition, MeetingImpl.timeOf(meeting));
+        }
+        if (cmCanonical.first(meeting, ANY_MEETING) == null) {
+            // no equal meetings, which is almost always the case
+            cmCanonical.add(meeting);
+            cmSchedules.add(meeting);
+            cmCalendar.add(meeting);
+            return;
+        }
+        Meeting[] listed = listed(meeting);
+        cmCanonical.add(meeting);
+        relist(listed, listed(meeting));
+    }
+
+    /**
+     * Replaces a meeting in the indexes with an updated version of
+     * itself, eg. when a future meeting is converted to a past meeting
+     *
+     * @param previous The meeting currently in the indexes
+     * @param updated The meeting replacing it
+     */
+    private void reindexMeeting(Meeting previous, Meeting updated) {
+        cmMeetings.put(updated.getId(), updated);
+        Meeting[] listed = listed(previous);
+        cmCanonical.replace(previous, updated);
+        relist(listed, listed(updated));
+    }
+
+    /**
+     * Of the meetings equal to a meeting, returns those which are
+     * listed by the queries, ie. the first by ID of all of them, of
+     * the past meetings and of the future meetings
+     *
+     * @param meeting A meeting
+     * @return the listed meetings, an element is null if there is no such meeting
+     */
+    private Meeting[] listed(Meeting meeting) {
+        return new Meeting[] {
+            cmCanonical.first(meeting, ANY_MEETING),
+            cmCanonical.first(meeting, m -> m instanceof PastMeeting),
+            cmCanonical.first(meeting, m -> !(m instanceof PastMeeting))
+        };
+    }
+
+    /**
+     * Updates the calendar and per-contact indexes when the listed
+     * meetings of a group of equal meetings change
+     *
+     * @see #listed(Meeting)
+     */
+    private void relist(Meeting[] before, Meeting[] after) {
+        if (before[0] != after[0]) {
+            if (before[0] != null) { cmCalendar.remove(before[0]); }
+            if (after[0] != null) { cmCalendar.add(after[0]); }
+        }
+        for (int i = 1; i < before.length; i++) {
+            if (before[i] != after[i]) {
+                if (before[i] != null) { cmSchedules.remove(before[i]); }
+                if (after[i] != null) { cmSchedules.add(after[i]); }
+            }
+        }
+    }
+
+    /**
+     * Performs a storage operation, as with reading the data file
+     * errors are reported but do not stop the CM from working.<br>
+     * Must be called while holding the write lock.
+     *
+     * @param op The storage operation
+     * @return the number of the change, to wait for with {@link #awaitDurable(long)}
+     */
+    private long persist(StorageOp op) {
+        long change = ++cmChanges;
+        try {
+            op.run();
         } catch (IOException ioEx) {
+            cmStorage.metrics().writeFailed();
             ioEx.printStackTrace();
         }
+        return change;
+    }
+
+    /**
+     * With group commit, waits until a change has been made durable by
+     * a flush, which writes it along with the changes other threads
+     * made within the same window. Otherwise returns straight away.<br>
+     * Must not be called while holding the lock, so that the changes
+     * of other threads can join the batch. If the batch can not be
+     * written the error is printed and counted as with {@link #flush()},
+     * and is then thrown to the caller, whose change may not be durable.
+     *
+     * @param change The number of the change, 0 if there was none
+     * @throws UncheckedIOException if the batch could not be written
+     */
+    private void awaitDurable(long change) {
+        if (cmGroupCommit == null || change == 0 || change <= cmFlushedChanges) {
+            return;
+        }
+        try {
+            cmFlusher.flushWithin(cmGroupCommit.getWindowNanos(), cmGroupCommit.getMaxBatch()).join();
+        } catch (CompletionException ex) {
+            // already printed and counted by the flusher
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw new UncheckedIOException((IOException) cause);
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * A storage operation which may fail with an IOException
+     */
+    private interface StorageOp {
+        void run() throws IOException;
+    }
+
+    /**
+     * Copies up to {@code limit} meetings following a meeting from a
+     * chronologically ordered set
+     *
+     * @param meetings The meetings, all of type T
+     * @param after The meeting to start after, or null to start at the beginning
+     * @param limit The maximum number of meetings
+     * @return the meetings
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Meeting> List<T> page(NavigableSet<Meeting> meetings, Meeting after, int limit) {
+        List<T> page = new ArrayList<>(Math.min(limit, meetings.size()));
+        // checked as tailSet() of an empty set without a comparator can't compare meetings
+        if (meetings.isEmpty()) {
+            return page;
+        }
+        Iterator<Meeting> it = ((after == null) ? meetings : meetings.tailSet(after, false)).iterator();
+        while (page.size() < limit && it.hasNext()) {
+            page.add((T) it.next());
+        }
+        return page;
+    }
+
+    /**
+     * @param limit A page size
+     * @throws IllegalArgumentException if the limit is 0 or negative
+     */
+    private static void requirePositive(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException();
+        }
     }
 
     /**
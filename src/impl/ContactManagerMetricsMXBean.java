@@ -0,0 +1,42 @@
+package impl;
+
+import java.util.Map;
+
+/**
+ * The metrics of a Contact Manager, as exposed through JMX by an
+ * {@link InstrumentedContactManager}.
+ *
+ * @author lmignot
+ */
+public interface ContactManagerMetricsMXBean {
+
+    /**
+     * @return the number of contacts, or -1 if it is not known
+     */
+    int getContactCount();
+
+    /**
+     * @return the number of past and future meetings, or -1 if it is not known
+     */
+    int getMeetingCount();
+
+    /**
+     * @return the size in bytes of the data last flushed, or -1 if it is not known
+     */
+    long getSnapshotSize();
+
+    /**
+     * @return the statistics of loading and flushing the data, or null if they are not known
+     */
+    PersistenceStats getPersistence();
+
+    /**
+     * @return the statistics of each operation, by operation name
+     */
+    Map<String, OperationStats> getOperations();
+
+    /**
+     * Clears the statistics of all operations
+     */
+    void resetOperations();
+}
@@ -0,0 +1,97 @@
+package impl;
+
+import spec.Meeting;
+import spec.PastMeeting;
+
+import java.util.Collections;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+/**
+ * An inverted index from contact ID to the meetings that contact
+ * attends.<br>
+ * Each contact's meetings are kept in chronological order and split
+ * into past and future meetings, so the per-contact meeting queries
+ * only ever touch that contact's own meetings.
+ *
+ * @see MeetingImpl#CHRONOLOGICAL
+ *
+ * @author lmignot
+ */
+final class ContactMeetingIndex {
+
+    private final IdIndex<Entry> entries = new IdIndex<>();
+
+    /**
+     * Adds a meeting to the schedule of each of its contacts
+     *
+     * @param meeting The meeting to index
+     */
+    void add(Meeting meeting) {
+        for (int contactId : MeetingImpl.contactIdsOf(meeting)) {
+            entryFor(contactId).setFor(meeting).add(meeting);
+        }
+    }
+
+    /**
+     * Removes a meeting from the schedule of each of its contacts,
+     * and the schedule of a contact who has no meetings left
+     *
+     * @param meeting The meeting to remove
+     */
+    void remove(Meeting meeting) {
+        for (int contactId : MeetingImpl.contactIdsOf(meeting)) {
+            Entry entry = entries.get(contactId);
+            if (entry != null && entry.setFor(meeting).remove(meeting) && entry.isEmpty()) {
+                entries.remove(contactId);
+            }
+        }
+    }
+
+    /**
+     * @param contactId The contact's ID
+     * @return the contact's future meetings in chronological order
+     */
+    NavigableSet<Meeting> future(int contactId) {
+        Entry entry = entries.get(contactId);
+        return (entry == null)
+            ? Collections.emptyNavigableSet()
+            : Collections.unmodifiableNavigableSet(entry.future);
+    }
+
+    /**
+     * @param contactId The contact's ID
+     * @return the contact's past meetings in chronological order
+     */
+    NavigableSet<Meeting> past(int contactId) {
+        Entry entry = entries.get(contactId);
+        return (entry == null)
+            ? Collections.emptyNavigableSet()
+            : Collections.unmodifiableNavigableSet(entry.past);
+    }
+
+    private Entry entryFor(int contactId) {
+        Entry entry = entries.get(contactId);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(contactId, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * A single contact's meetings
+     */
+    private static final class Entry {
+        private final NavigableSet<Meeting> past = new TreeSet<>(MeetingImpl.CHRONOLOGICAL);
+        private final NavigableSet<Meeting> future = new TreeSet<>(MeetingImpl.CHRONOLOGICAL);
+
+        private NavigableSet<Meeting> setFor(Meeting meeting) {
+            return (meeting instanceof PastMeeting) ? past : future;
+        }
+
+        private boolean isEmpty() {
+            return past.isEmpty() && future.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package impl;
+
+import java.util.Objects;
+
+/**
+ * The details of a new contact, for adding contacts in a batch
+ *
+ * @see ContactManagerImpl#addNewContacts(java.util.List)
+ *
+ * @author lmignot
+ */
+public final class ContactSpec {
+
+    private final String name;
+    private final String notes;
+
+    /**
+     * @param name The contact's name
+     * @param notes Notes about the contact
+     * @throws IllegalArgumentException if the name or the notes are empty strings
+     * @throws NullPointerException if the name or the notes are null
+     */
+    public ContactSpec(String name, String notes) {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(notes);
+        if (name.equals("") || notes.equals("")) {
+            throw new IllegalArgumentException();
+        }
+        this.name = name;
+        this.notes = notes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getNotes() {
+        return notes;
+    }
+}
@@ -0,0 +1,49 @@
+package impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A clock which only moves when it is told to, so that tests and
+ * benchmarks can control when meetings pass from the future to the
+ * past rather than waiting for the system clock.
+ *
+ * @author lmignot
+ */
+public final class FakeTimeSource implements TimeSource {
+
+    private final AtomicLong now;
+
+    /**
+     * @param startMillis The initial time in epoch milliseconds
+     */
+    public FakeTimeSource(long startMillis) {
+        now = new AtomicLong(startMillis);
+    }
+
+    /**
+     * @see TimeSource#currentTimeMillis()
+     */
+    @Override
+    public long currentTimeMillis() {
+        return now.get();
+    }
+
+    /**
+     * @param millis The new time in epoch milliseconds
+     */
+    public void set(long millis) {
+        now.set(millis);
+    }
+
+    /**
+     * Moves the time forward, or backward if the amount is negative.<br>
+     * Future meetings which have already become past meetings stay
+     * past meetings if the time is moved back.
+     *
+     * @param millis The number of milliseconds to move the time by
+     * @return the new time
+     */
+    public long advance(long millis) {
+        return now.addAndGet(millis);
+    }
+}
@@ -0,0 +1,173 @@
+package impl;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Runs the flushes of a Contact Manager one at a time, either on the
+ * thread asking for them or in the background.<br>
+ * A flush is prepared while holding the CM's write lock, which only
+ * takes what needs writing (eg. a snapshot of the data), and written
+ * after the lock has been released, so that the CM carries on
+ * answering queries and making changes while the data is written.
+ * <br>
+ * Background flushes are written by a single writer thread, which is
+ * started when needed and stops once it has been idle for a while.
+ * Requests made while a background flush is waiting to start are
+ * coalesced with it: a single flush, which includes the changes made
+ * before it starts, serves them all. For group commit a flush may wait
+ * for a window, so that more requests join it, before it starts.
+ *
+ * @see ContactManagerImpl#flushAsync()
+ *
+ * @author lmignot
+ */
+final class Flusher {
+
+    private static final long IDLE_SECONDS = 10;
+
+    private final Preparer preparer;
+    private final StorageMetrics metrics;
+    private final Lock flushLock = new ReentrantLock();
+    private final ThreadPoolExecutor writer;
+
+    // the background flush waiting to start, the number of requests
+    // it serves, and when and after how many requests it starts
+    private CompletableFuture<Void> queued;
+    private int queuedRequests;
+    private int queuedLimit;
+    private long queuedDeadline;
+
+    /**
+     * @param preparer Prepares a flush while holding the CM's write lock
+     * @param metrics Where flushes are recorded
+     */
+    Flusher(Preparer preparer, StorageMetrics metrics) {
+        this.preparer = preparer;
+        this.metrics = metrics;
+        writer = new ThreadPoolExecutor(1, 1, IDLE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "ContactManager-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        writer.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Prepares and writes a flush on this thread, once any flush
+     * being written has finished
+     *
+     * @throws IOException if the flush can not be prepared or written
+     */
+    void flush() throws IOException {
+        flushLock.lock();
+        try {
+            metrics.flushStarted();
+            try {
+                Storage.Flush flush = preparer.prepare();
+                if (flush == null) {
+                    return;
+                }
+                flush.write();
+            } catch (IOException | RuntimeException ex) {
+                metrics.flushFailed();
+                throw ex;
+            }
+            metrics.flushed();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Asks for a flush in the background, or joins the one which is
+     * waiting to start
+     *
+     * @return a future completed once the flush has been written,
+     *         or completed exceptionally if it failed
+     */
+    CompletableFuture<Void> flushAsync() {
+        return flushWithin(0, 1);
+    }
+
+    /**
+     * Asks for a flush in the background which starts within a window,
+     * or joins the one which is waiting to start. The flush starts once
+     * the window of any of its requests has passed, or once it has as
+     * many requests as any of them allows, and not before the flush
+     * being written has finished.
+     *
+     * @param windowNanos How long the flush may wait for more requests
+     * @param maxRequests The number of requests after which it starts straight away
+     * @return a future completed once the flush has been written,
+     *         or completed exceptionally if it failed
+     */
+    CompletableFuture<Void> flushWithin(long windowNanos, int maxRequests) {
+        CompletableFuture<Void> f;
+        synchronized (this) {
+            long deadline = System.nanoTime() + windowNanos;
+            f = queued;
+            if (f == null) {
+                f = new CompletableFuture<>();
+                queued = f;
+                queuedRequests = 1;
+                queuedLimit = maxRequests;
+                queuedDeadline = deadline;
+                writer.execute(this::writeQueued);
+            } else {
+                queuedRequests++;
+                queuedLimit = Math.min(queuedLimit, maxRequests);
+                // only wakes the writer if the flush may now start sooner
+                if (deadline - queuedDeadline < 0) {
+                    queuedDeadline = deadline;
+                    notifyAll();
+                } else if (queuedRequests >= queuedLimit) {
+                    notifyAll();
+                }
+            }
+        }
+        // callers get their own future so that none of them can complete the others'
+        return f.thenApply(Function.identity());
+    }
+
+    private void writeQueued() {
+        CompletableFuture<Void> f;
+        synchronized (this) {
+            long remaining;
+            while (queuedRequests < queuedLimit && (remaining = queuedDeadline - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            f = queued;
+            queued = null;
+        }
+        try {
+            flush();
+            f.complete(null);
+        } catch (IOException | RuntimeException ex) {
+            ex.printStackTrace();
+            f.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * Prepares a flush of a CM
+     */
+    interface Preparer {
+        /**
+         * @return the flush, or null if there is nothing to write
+         * @throws IOException if the flush can not be prepared
+         */
+        Storage.Flush prepare() throws IOException;
+    }
+}
@@ -6,6 +6,8 @@ import spec.FutureMeeting;
 import java.io.Serializable;
 import java.util.Calendar;
 import java.util.Set;
+import java.util.TimeZone;
+import java.util.function.IntFunction;
 
 /**
  * Future Meeting
@@ -18,6 +20,8 @@ import java.util.Set;
  */
 public class FutureMeetingImpl extends MeetingImpl implements FutureMeeting, Serializable {
 
+    private static final long serialVersionUID = 3868812691773865796L;
+
     /**
      * @see MeetingImpl
      *
@@ -28,4 +32,11 @@ public class FutureMeetingImpl extends MeetingImpl implements FutureMeeting, Ser
     public FutureMeetingImpl(int id, Calendar date, Set<Contact> contacts) {
         super(id, date, contacts);
     }
+
+    /**
+     * @see MeetingImpl#MeetingImpl(int, long, TimeZone, int[], IntFunction)
+     */
+    FutureMeetingImpl(int id, long time, TimeZone zone, int[] contactIds, IntFunction<Contact> directory) {
+        super(id, time, zone, contactIds, directory);
+    }
 }
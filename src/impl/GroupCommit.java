@@ -0,0 +1,64 @@
+package impl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes each change to a Contact Manager durable before the call
+ * making it returns, while sharing the cost of syncing between the
+ * threads making changes at the same time.<br>
+ * A change starts a batch, or joins the batch which is waiting to be
+ * written. The batch is written and synced as one flush once its window
+ * has passed since it started, or as soon as it holds the maximum
+ * number of changes, and every caller in it is then released. A longer
+ * window makes larger batches, so more durable changes per second from
+ * many threads, at the cost of a longer wait for each change.
+ * <br>
+ * Meant for storages which only write the changes on a flush, such as
+ * a {@link JournalStorage}, rather than all of the data.
+ *
+ * @see ContactManagerImpl#ContactManagerImpl(Storage, TimeSource, GroupCommit)
+ *
+ * @author lmignot
+ */
+public final class GroupCommit {
+
+    private final long windowNanos;
+    private final int maxBatch;
+
+    /**
+     * @param window How long a batch waits for more changes before it is written,
+     *               0 to write it as soon as the previous batch has been
+     * @param unit The unit of the window
+     * @param maxBatch The number of changes after which a batch is written
+     *                 without waiting for the rest of its window
+     * @throws IllegalArgumentException if the window is negative or the batch size is 0 or negative
+     * @throws NullPointerException if the unit is null
+     */
+    public GroupCommit(long window, TimeUnit unit, int maxBatch) {
+        if (window < 0 || maxBatch <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.windowNanos = unit.toNanos(window);
+        this.maxBatch = maxBatch;
+    }
+
+    /**
+     * @return how long a batch waits for more changes, in nanoseconds
+     */
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+
+    /**
+     * @return the number of changes after which a batch is written straight away
+     */
+    public int getMaxBatch() {
+        return maxBatch;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GroupCommit[window=%dus, maxBatch=%d]", TimeUnit.NANOSECONDS.toMicros(windowNanos),
+            maxBatch);
+    }
+}
@@ -0,0 +1,186 @@
+package impl;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out unique, positive int IDs without locking.<br>
+ * Each thread reserves a block of IDs from a shared counter and then
+ * allocates from its own block, so threads only touch the shared
+ * counter once per block rather than once per ID. A single thread
+ * always gets consecutive IDs; when several threads allocate, the IDs
+ * they leave unused in their blocks are never handed out.
+ * <br>
+ * The high-water mark is the ID after the highest ID allocated so far,
+ * rather than after the highest ID reserved, so restarting from it
+ * does not skip the unused rest of each block. It is worked out from
+ * every thread's block when asked for, so allocating an ID never
+ * writes to memory shared with other threads. The blocks of threads
+ * which have ended, eg. in a thread pool which replaces its threads,
+ * are let go once their last ID has been folded into the mark.
+ *
+ * @author lmignot
+ */
+final class IdAllocator {
+
+    static final int DEFAULT_BLOCK_SIZE = 64;
+
+    private final int first;
+    private final int blockSize;
+    private final AtomicInteger reserved;
+    // the high-water mark of the blocks which have been let go
+    private final AtomicInteger retired;
+    private final Queue<Block> allBlocks = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Block> blocks = ThreadLocal.withInitial(this::newBlock);
+
+    /**
+     * @param first The first ID to allocate
+     * @param blockSize The number of IDs each thread reserves at a time
+     * @throws IllegalArgumentException if the first ID or the block size is 0 or negative
+     */
+    IdAllocator(int first, int blockSize) {
+        if (first <= 0 || blockSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.first = first;
+        this.blockSize = blockSize;
+        reserved = new AtomicInteger(first);
+        retired = new AtomicInteger(first);
+    }
+
+    /**
+     * @see IdAllocator#IdAllocator(int, int)
+     */
+    IdAllocator(int first) {
+        this(first, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @return a new ID
+     * @throws IllegalStateException if all positive int IDs below
+     *                               {@link Integer#MAX_VALUE} have been allocated
+     */
+    int next() {
+        Block block = blocks.get();
+        if (block.next == block.end) {
+            reserve(block);
+        }
+        int id = block.next;
+        block.next = id + 1;
+        return id;
+    }
+
+    /**
+     * Allocates a range of consecutive IDs, eg. for a batch insert.<br>
+     * The range is taken from this thread's block if it is large
+     * enough, otherwise the block is extended if no other thread has
+     * reserved IDs since, so a single thread still gets consecutive IDs.
+     *
+     * @param count The number of IDs
+     * @return the first ID of the range
+     * @throws IllegalArgumentException if the count is negative
+     * @throws IllegalStateException if there are not enough IDs left
+     */
+    int next(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException();
+        }
+        Block block = blocks.get();
+        int first = block.next;
+        if (block.end - first < count) {
+            int extended = (int) Math.min((long) first + count + blockSize, Integer.MAX_VALUE);
+            if (block.end != 0 && reserved.compareAndSet(block.end, extended)) {
+                block.end = extended;
+            } else {
+                first = reserveRange(count);
+                block.end = (int) Math.min((long) first + count, Integer.MAX_VALUE);
+            }
+            if (block.end - first < count) {
+                throw new IllegalStateException("No more IDs");
+            }
+        }
+        block.next = first + count;
+        return first;
+    }
+
+    /**
+     * @return the ID after the highest ID allocated so far, which is
+     *         where a new allocator should start
+     */
+    int highWaterMark() {
+        retireBlocks();
+        int mark = retired.get();
+        for (Block block : allBlocks) {
+            mark = Math.max(mark, block.next);
+        }
+        return mark;
+    }
+
+    private Block newBlock() {
+        retireBlocks();
+        Block block = new Block(Thread.currentThread());
+        allBlocks.add(block);
+        return block;
+    }
+
+    /**
+     * Lets go of the blocks of threads which have ended, after adding
+     * their last ID to the retired high-water mark. A block may be
+     * retired twice by threads doing this at once, which is harmless.
+     */
+    private void retireBlocks() {
+        for (Iterator<Block> it = allBlocks.iterator(); it.hasNext(); ) {
+            Block block = it.next();
+            Thread owner = block.owner.get();
+            if (owner == null || !owner.isAlive()) {
+                int next = block.next;
+                retired.accumulateAndGet(next, Math::max);
+                it.remove();
+            }
+        }
+    }
+
+    private void reserve(Block block) {
+        int start = reserveRange(blockSize);
+        block.next = start;
+        block.end = (int) Math.min((long) start + blockSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reserves IDs from the shared counter
+     *
+     * @return the first reserved ID, the range ends at
+     *         {@link Integer#MAX_VALUE} if there aren't enough IDs left
+     */
+    private int reserveRange(int count) {
+        int start;
+        int end;
+        do {
+            start = reserved.get();
+            if (start == Integer.MAX_VALUE) {
+                throw new IllegalStateException("No more IDs");
+            }
+            end = (int) Math.min((long) start + count, Integer.MAX_VALUE);
+        } while (!reserved.compareAndSet(start, end));
+        return start;
+    }
+
+    /**
+     * The range of IDs a thread has reserved, from next up to (but not including) end.<br>
+     * Only the owning thread writes to a block, next is volatile so
+     * that {@link #highWaterMark()} sees the latest value. The owner is
+     * only weakly referenced, so that the block does not keep it.
+     */
+    private static final class Block {
+        private final WeakReference<Thread> owner;
+        private volatile int next;
+        private int end;
+
+        private Block(Thread owner) {
+            this.owner = new WeakReference<>(owner);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package impl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A dense primary-key index of objects keyed by a positive int ID.<br>
+ * The Contact Manager hands out IDs sequentially so a plain array
+ * indexed by ID gives constant time lookups without boxing the key.
+ * The backing array grows geometrically as higher IDs are added,
+ * gaps in the ID sequence are simply left empty.
+ *
+ * @param <T> The type of object being indexed
+ *
+ * @author lmignot
+ */
+final class IdIndex<T> implements Iterable<T> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private Object[] values;
+    private int size;
+    private int maxId;
+
+    /**
+     * Create an empty index
+     */
+    IdIndex() {
+        values = new Object[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * Associates a value with an ID, replacing any previous value
+     *
+     * @param id The ID, must be positive
+     * @param value The value to store
+     * @throws IllegalArgumentException if the id is 0 or negative
+     * @throws NullPointerException if the value is null
+     */
+    void put(int id, T value) {
+        if (id <= 0) {
+            throw new IllegalArgumentException();
+        }
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        if (id >= values.length) {
+            int doubled = (values.length > Integer.MAX_VALUE / 2) ? Integer.MAX_VALUE : values.length * 2;
+            values = Arrays.copyOf(values, Math.max(doubled, id + 1));
+        }
+        if (values[id] == null) {
+            size++;
+        }
+        values[id] = value;
+        maxId = Math.max(maxId, id);
+    }
+
+    /**
+     * Removes the value associated with an ID, if there is one
+     *
+     * @param id The ID
+     */
+    void remove(int id) {
+        if (id <= 0 || id > maxId || values[id] == null) {
+            return;
+        }
+        values[id] = null;
+        size--;
+        while (maxId > 0 && values[maxId] == null) {
+            maxId--;
+        }
+    }
+
+    /**
+     * Grows the index so that IDs up to maxId can be added without
+     * growing it again, eg. before adding a batch of values
+     *
+     * @param maxId The highest ID which will be added
+     */
+    void ensureCapacity(int maxId) {
+        if (maxId >= values.length) {
+            values = Arrays.copyOf(values, maxId + 1);
+        }
+    }
+
+    /**
+     * @param id The ID to look up
+     * @return the value stored against the ID, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    T get(int id) {
+        if (id <= 0 || id > maxId) {
+            return null;
+        }
+        return (T) values[id];
+    }
+
+    /**
+     * @return the number of values in the index
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the highest ID currently in use, or 0 if the index is empty
+     */
+    int maxId() {
+        return maxId;
+    }
+
+    /**
+     * @return a sequential stream of the values in ascending ID order
+     */
+    Stream<T> stream() {
+        return StreamSupport.stream(
+            Spliterators.spliterator(iterator(), size, Spliterator.ORDERED | Spliterator.NONNULL),
+            false
+        );
+    }
+
+    /**
+     * Iterates over the values in ascending ID order, skipping gaps
+     *
+     * @return an iterator over the values
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int next = advance(1);
+
+            private int advance(int from) {
+                int i = from;
+                while (i <= maxId && values[i] == null) { i++; }
+                return i;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next <= maxId;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public T next() {
+                if (!hasNext()) { throw new NoSuchElementException(); }
+                T value = (T) values[next];
+                next = advance(next + 1);
+                return value;
+            }
+        };
+    }
+}
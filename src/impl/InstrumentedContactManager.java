@@ -0,0 +1,357 @@
+package impl;
+
+import spec.Contact;
+import spec.ContactManager;
+import spec.FutureMeeting;
+import spec.Meeting;
+import spec.PastMeeting;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Contact Manager which records how each of its operations performs
+ * and passes the calls on to another Contact Manager.<br>
+ * For each operation it counts the calls, counts the calls which
+ * failed by exception type and records the latencies in a
+ * {@link LatencyHistogram}, from which percentiles are worked out when
+ * they are read. Recording a call takes two reads of the clock and a
+ * few atomic updates, it does not allocate unless the call fails.
+ * <br>
+ * If the wrapped CM is a {@link ContactManagerImpl} its numbers of
+ * contacts and meetings, the size of its data file and its
+ * {@link PersistenceStats} are available as well. All of the metrics
+ * can be read with {@link #getOperations()} and the other getters, or
+ * through JMX once {@link #registerMBean(String)} has been called.
+ * <br>
+ * This class is as thread safe as the wrapped CM.
+ *
+ * @see ContactManagerMetricsMXBean
+ *
+ * @author lmignot
+ */
+public final class InstrumentedContactManager implements ContactManager, ContactManagerMetricsMXBean {
+
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+    private final ContactManager cm;
+    private final Map<String, Operation> operations = new LinkedHashMap<>();
+    private final Operation addFutureMeeting = operation("addFutureMeeting");
+    private final Operation getPastMeeting = operation("getPastMeeting");
+    private final Operation getFutureMeeting = operation("getFutureMeeting");
+    private final Operation getMeeting = operation("getMeeting");
+    private final Operation getFutureMeetingList = operation("getFutureMeetingList");
+    private final Operation getMeetingListOn = operation("getMeetingListOn");
+    private final Operation getPastMeetingListFor = operation("getPastMeetingListFor");
+    private final Operation addNewPastMeeting = operation("addNewPastMeeting");
+    private final Operation addMeetingNotes = operation("addMeetingNotes");
+    private final Operation addNewContact = operation("addNewContact");
+    private final Operation getContactsByName = operation("getContacts(String)");
+    private final Operation getContactsById = operation("getContacts(int...)");
+    private final Operation flush = operation("flush");
+    private volatile ObjectName mbeanName;
+
+    /**
+     * @param cm The Contact Manager to instrument
+     * @throws NullPointerException if the CM is null
+     */
+    public InstrumentedContactManager(ContactManager cm) {
+        this.cm = Objects.requireNonNull(cm);
+    }
+
+    private Operation operation(String name) {
+        Operation op = new Operation();
+        operations.put(name, op);
+        return op;
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, under
+     * {@code impl:type=ContactManager,name=<name>}
+     *
+     * @param name Identifies this CM among others in the same JVM
+     * @return the name the metrics are registered under
+     * @throws JMException if the metrics can not be registered,
+     *                     eg. if another CM is registered with the same name
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("impl:type=ContactManager,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        mbeanName = objectName;
+        return objectName;
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server, if they were registered
+     *
+     * @throws JMException if the metrics can not be unregistered
+     */
+    public void unregisterMBean() throws JMException {
+        ObjectName objectName = mbeanName;
+        if (objectName != null) {
+            mbeanName = null;
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        }
+    }
+
+    @Override
+    public int addFutureMeeting(Set<Contact> contacts, Calendar date) {
+        long start = System.nanoTime();
+        try {
+            return cm.addFutureMeeting(contacts, date);
+        } catch (RuntimeException | Error ex) {
+            addFutureMeeting.failed(ex);
+            throw ex;
+        } finally {
+            addFutureMeeting.record(start);
+        }
+    }
+
+    @Override
+    public PastMeeting getPastMeeting(int id) {
+        long start = System.nanoTime();
+        try {
+            return cm.getPastMeeting(id);
+        } catch (RuntimeException | Error ex) {
+            getPastMeeting.failed(ex);
+            throw ex;
+        } finally {
+            getPastMeeting.record(start);
+        }
+    }
+
+    @Override
+    public FutureMeeting getFutureMeeting(int id) {
+        long start = System.nanoTime();
+        try {
+            return cm.getFutureMeeting(id);
+        } catch (RuntimeException | Error ex) {
+            getFutureMeeting.failed(ex);
+            throw ex;
+        } finally {
+            getFutureMeeting.record(start);
+        }
+    }
+
+    @Override
+    public Meeting getMeeting(int id) {
+        long start = System.nanoTime();
+        try {
+            return cm.getMeeting(id);
+        } catch (RuntimeException | Error ex) {
+            getMeeting.failed(ex);
+            throw ex;
+        } finally {
+            getMeeting.record(start);
+        }
+    }
+
+    @Override
+    public List<Meeting> getFutureMeetingList(Contact contact) {
+        long start = System.nanoTime();
+        try {
+            return cm.getFutureMeetingList(contact);
+        } catch (RuntimeException | Error ex) {
+            getFutureMeetingList.failed(ex);
+            throw ex;
+        } finally {
+            getFutureMeetingList.record(start);
+        }
+    }
+
+    @Override
+    public List<Meeting> getMeetingListOn(Calendar date) {
+        long start = System.nanoTime();
+        try {
+            return cm.getMeetingListOn(date);
+        } catch (RuntimeException | Error ex) {
+            getMeetingListOn.failed(ex);
+            throw ex;
+        } finally {
+            getMeetingListOn.record(start);
+        }
+    }
+
+    @Override
+    public List<PastMeeting> getPastMeetingListFor(Contact contact) {
+        long start = System.nanoTime();
+        try {
+            return cm.getPastMeetingListFor(contact);
+        } catch (RuntimeException | Error ex) {
+            getPastMeetingListFor.failed(ex);
+            throw ex;
+        } finally {
+            getPastMeetingListFor.record(start);
+        }
+    }
+
+    @Override
+    public void addNewPastMeeting(Set<Contact> contacts, Calendar date, String text) {
+        long start = System.nanoTime();
+        try {
+            cm.addNewPastMeeting(contacts, date, text);
+        } catch (RuntimeException | Error ex) {
+            addNewPastMeeting.failed(ex);
+            throw ex;
+        } finally {
+            addNewPastMeeting.record(start);
+        }
+    }
+
+    @Override
+    public void addMeetingNotes(int id, String text) {
+        long start = System.nanoTime();
+        try {
+            cm.addMeetingNotes(id, text);
+        } catch (RuntimeException | Error ex) {
+            addMeetingNotes.failed(ex);
+            throw ex;
+        } finally {
+            addMeetingNotes.record(start);
+        }
+    }
+
+    @Override
+    public int addNewContact(String name, String notes) {
+        long start = System.nanoTime();
+        try {
+            return cm.addNewContact(name, notes);
+        } catch (RuntimeException | Error ex) {
+            addNewContact.failed(ex);
+            throw ex;
+        } finally {
+            addNewContact.record(start);
+        }
+    }
+
+    @Override
+    public Set<Contact> getContacts(String name) {
+        long start = System.nanoTime();
+        try {
+            return cm.getContacts(name);
+        } catch (RuntimeException | Error ex) {
+            getContactsByName.failed(ex);
+            throw ex;
+        } finally {
+            getContactsByName.record(start);
+        }
+    }
+
+    @Override
+    public Set<Contact> getContacts(int... ids) {
+        long start = System.nanoTime();
+        try {
+            return cm.getContacts(ids);
+        } catch (RuntimeException | Error ex) {
+            getContactsById.failed(ex);
+            throw ex;
+        } finally {
+            getContactsById.record(start);
+        }
+    }
+
+    @Override
+    public void flush() {
+        long start = System.nanoTime();
+        try {
+            cm.flush();
+        } catch (RuntimeException | Error ex) {
+            flush.failed(ex);
+            throw ex;
+        } finally {
+            flush.record(start);
+        }
+    }
+
+    /**
+     * @see ContactManagerImpl#getContactCount()
+     */
+    @Override
+    public int getContactCount() {
+        return (cm instanceof ContactManagerImpl) ? ((ContactManagerImpl) cm).getContactCount() : -1;
+    }
+
+    /**
+     * @see ContactManagerImpl#getMeetingCount()
+     */
+    @Override
+    public int getMeetingCount() {
+        return (cm instanceof ContactManagerImpl) ? ((ContactManagerImpl) cm).getMeetingCount() : -1;
+    }
+
+    /**
+     * @see ContactManagerImpl#getSnapshotSize()
+     */
+    @Override
+    public long getSnapshotSize() {
+        return (cm instanceof ContactManagerImpl) ? ((ContactManagerImpl) cm).getSnapshotSize() : -1;
+    }
+
+    /**
+     * @see ContactManagerImpl#getPersistenceStats()
+     */
+    @Override
+    public PersistenceStats getPersistence() {
+        return (cm instanceof ContactManagerImpl) ? ((ContactManagerImpl) cm).getPersistenceStats() : null;
+    }
+
+    /**
+     * @return the statistics of each operation, by operation name,
+     *         in the order the operations are declared by {@link ContactManager}
+     */
+    @Override
+    public Map<String, OperationStats> getOperations() {
+        Map<String, OperationStats> stats = new LinkedHashMap<>();
+        operations.forEach((name, op) -> stats.put(name, op.stats()));
+        return stats;
+    }
+
+    /**
+     * Clears the statistics of all operations, calls made at the
+     * same time may be partly counted
+     */
+    @Override
+    public void resetOperations() {
+        operations.values().forEach(Operation::reset);
+    }
+
+    /**
+     * The calls, errors and latencies of one operation
+     */
+    private static final class Operation {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final ConcurrentMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+        private void record(long start) {
+            latency.record(System.nanoTime() - start);
+        }
+
+        private void failed(Throwable ex) {
+            errors.computeIfAbsent(ex.getClass().getName(), type -> new LongAdder()).increment();
+        }
+
+        private OperationStats stats() {
+            Map<String, Long> errorCounts = new HashMap<>();
+            errors.forEach((type, count) -> errorCounts.put(type, count.sum()));
+            long[] p = latency.percentiles(PERCENTILES);
+            return new OperationStats(latency.count(), errorCounts, latency.mean(), p[0], p[1], p[2], p[3],
+                latency.max());
+        }
+
+        private void reset() {
+            latency.reset();
+            errors.clear();
+        }
+    }
+}
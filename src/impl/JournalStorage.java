@@ -0,0 +1,561 @@
+package impl;
+
+import spec.Contact;
+import spec.Meeting;
+import spec.PastMeeting;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.TimeZone;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Stores a Contact Manager's data as a snapshot file plus an
+ * append-only journal (write-ahead log) of the changes made since.<br>
+ * Every change is appended to the journal as a small record, so a
+ * flush only writes and syncs the new records rather than rewriting
+ * all of the data. Once the journal grows past the compaction
+ * threshold the next flush folds it into a new snapshot and empties it.
+ * On load the snapshot is read and the journal replayed on top of it.
+ *
+ * <h3>Journal format (version 1)</h3>
+ * <pre>
+ * int     magic ("CMJL")
+ * int     version
+ * records, each:
+ *   int     payload length
+ *   int     CRC-32 of the payload
+ *   payload:
+ *     long    sequence number
+ *     byte    record type
+ *     ...     type specific fields, see the methods recording each change
+ * </pre>
+ * A snapshot records the sequence number of the last journal record it
+ * includes, so records that are already in the snapshot are skipped on
+ * replay if compaction was interrupted before the journal was emptied.
+ * A torn or corrupt record at the end of the journal (eg. after a crash
+ * mid-write) ends the replay, and is truncated away. If the snapshot
+ * or the journal can not be read, the journal is not written to until
+ * a later load succeeds, so that the changes it holds are not lost.
+ * <br>
+ * Records are appended while the CM holds its write lock, and written
+ * to the file in batches by flushes, which may run without the lock.
+ * Once the pending records grow large they are spilled to the file
+ * (without syncing) by the thread appending, unless a flush is writing
+ * at the time, so that changes never wait for the disk.
+ *
+ * @see SnapshotCodec
+ *
+ * @author lmignot
+ */
+public final class JournalStorage extends Storage {
+
+    static final int MAGIC = 0x434D4A4C;
+    static final int VERSION = 1;
+
+    /**
+     * The default size in bytes the journal may reach before it is compacted
+     */
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 16L * 1024 * 1024;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int SPILL_SIZE = 1 << 20;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte CONTACT = 1;
+    private static final byte CONTACT_NOTES = 2;
+    private static final byte FUTURE_MEETING = 3;
+    private static final byte PAST_MEETING = 4;
+    private static final byte MEETING_NOTES = 5;
+
+    private final SnapshotStorage snapshots;
+    private final Path logPath;
+    private final long compactionThreshold;
+
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final DataOutputStream pendingOut = new DataOutputStream(pending);
+    private final CRC32 crc = new CRC32();
+    // batches of records waiting to be written, in sequence order
+    private final Deque<Batch> unwritten = new ArrayDeque<>();
+    private final Lock io = new ReentrantLock();
+
+    // changed while holding the CM's write lock
+    private long sequence;
+    private long pendingRecords;
+    private volatile boolean loaded;
+
+    // changed while holding the I/O lock
+    private volatile long logSize;
+    private long writtenSequence;
+    private boolean unsynced;
+
+    /**
+     * Creates a journal storage with the default compaction threshold
+     *
+     * @param snapshotPath The snapshot file
+     * @param logPath The journal file
+     * @throws NullPointerException if either path is null
+     */
+    public JournalStorage(Path snapshotPath, Path logPath) {
+        this(snapshotPath, logPath, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    /**
+     * @param snapshotPath The snapshot file
+     * @param logPath The journal file
+     * @param compactionThreshold The size in bytes the journal may reach before
+     *                            it is folded into a new snapshot
+     * @throws NullPointerException if either path is null
+     * @throws IllegalArgumentException if the threshold is negative
+     */
+    public JournalStorage(Path snapshotPath, Path logPath, long compactionThreshold) {
+        if (compactionThreshold < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.snapshots = new SnapshotStorage(snapshotPath, metrics());
+        this.logPath = Objects.requireNonNull(logPath);
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    @Override
+    Snapshot load(IntFunction<Contact> directory) throws IOException {
+        loaded = false;
+        Snapshot base = snapshots.load(directory);
+        sequence = base.getJournalSequence();
+        writtenSequence = sequence;
+        logSize = 0;
+        if (!Files.exists(logPath)) {
+            loaded = true;
+            return base;
+        }
+
+        Replay replay = new Replay(base, directory);
+        try (FileChannel ch = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = ch.size();
+            if (size < HEADER_SIZE) {
+                ch.truncate(0);
+                loaded = true;
+                return base;
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch), BUFFER_SIZE));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a contact manager journal");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported journal version " + version);
+            }
+
+            long valid = HEADER_SIZE;
+            while (valid + RECORD_HEADER_SIZE <= size) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length <= 0 || valid + RECORD_HEADER_SIZE + length > size) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                replay.apply(payload);
+                valid += RECORD_HEADER_SIZE + length;
+            }
+            if (valid < size) {
+                ch.truncate(valid);
+            }
+            logSize = valid;
+            metrics().read(size);
+        }
+        sequence = Math.max(sequence, replay.lastSequence);
+        writtenSequence = sequence;
+        Snapshot snapshot = replay.toSnapshot();
+        loaded = true;
+        return snapshot;
+    }
+
+    /**
+     * Takes the records appended since the last flush, and a snapshot
+     * if the journal will have grown past the threshold. Writing the
+     * flush writes and syncs the records, then compacts the journal.
+     */
+    @Override
+    Flush prepareFlush(Supplier<Snapshot> snapshot) {
+        long through = seal();
+        Snapshot compacted = (logSize + unwrittenBytes() > compactionThreshold)
+            ? snapshot.get().withJournalSequence(through) : null;
+        return () -> {
+            io.lock();
+            try {
+                writeUnwritten(through, true);
+                if (compacted != null) {
+                    compact(compacted);
+                }
+            } finally {
+                io.unlock();
+            }
+        };
+    }
+
+    /**
+     * Writes a new snapshot, then empties the journal.<br>
+     * Must be called while holding the I/O lock, once the records
+     * included in the snapshot have been written and synced. If later
+     * records have been written as well, eg. spilled while the flush
+     * was waiting to write, emptying the journal would lose them, so
+     * compaction is left to the next flush.
+     *
+     * @param snapshot The CM's data, including the records up to its journal sequence
+     * @throws IOException if the snapshot or journal can not be written
+     */
+    private void compact(Snapshot snapshot) throws IOException {
+        if (writtenSequence != snapshot.getJournalSequence()) {
+            return;
+        }
+        snapshots.write(snapshot);
+        try (FileChannel ch = FileChannel.open(logPath, StandardOpenOption.WRITE)) {
+            ch.truncate(HEADER_SIZE);
+            long start = System.nanoTime();
+            ch.force(true);
+            metrics().synced(System.nanoTime() - start);
+        }
+        logSize = HEADER_SIZE;
+    }
+
+    /**
+     * @return the size of the snapshot file, the journal is not included
+     */
+    @Override
+    long snapshotSize() throws IOException {
+        return snapshots.snapshotSize();
+    }
+
+    /**
+     * Record: int id, string name, string notes<br>
+     * A new contact has at most one note, notes added later have a
+     * record each, so replaying keeps the notes apart.
+     */
+    @Override
+    void contactAdded(Contact contact) throws IOException {
+        beginRecord(CONTACT);
+        recordOut.writeInt(contact.getId());
+        SnapshotCodec.writeString(recordOut, contact.getName());
+        SnapshotCodec.writeString(recordOut, contact.getNotes());
+        endRecord();
+    }
+
+    /**
+     * Record: int id, string note
+     */
+    @Override
+    void contactNotesAdded(Contact contact, String note) throws IOException {
+        beginRecord(CONTACT_NOTES);
+        recordOut.writeInt(contact.getId());
+        SnapshotCodec.writeString(recordOut, note);
+        endRecord();
+    }
+
+    /**
+     * Record: int id, long date (epoch millis), string time zone ID,
+     * int number of contacts, int[] contact IDs, string notes (past meetings only)
+     */
+    @Override
+    void meetingAdded(Meeting meeting) throws IOException {
+        boolean past = meeting instanceof PastMeeting;
+        beginRecord(past ? PAST_MEETING : FUTURE_MEETING);
+        recordOut.writeInt(meeting.getId());
+        recordOut.writeLong(MeetingImpl.timeOf(meeting));
+        SnapshotCodec.writeString(recordOut, MeetingImpl.zoneOf(meeting).getID());
+        int[] contactIds = MeetingImpl.contactIdsOf(meeting);
+        recordOut.writeInt(contactIds.length);
+        for (int contactId : contactIds) {
+            recordOut.writeInt(contactId);
+        }
+        if (past) {
+            SnapshotCodec.writeString(recordOut, ((PastMeeting) meeting).getNotes());
+        }
+        endRecord();
+    }
+
+    /**
+     * Record: int id, string text
+     */
+    @Override
+    void meetingNotesAdded(int id, String text) throws IOException {
+        beginRecord(MEETING_NOTES);
+        recordOut.writeInt(id);
+        SnapshotCodec.writeString(recordOut, text);
+        endRecord();
+    }
+
+    private void beginRecord(byte type) throws IOException {
+        record.reset();
+        recordOut.writeLong(++sequence);
+        recordOut.writeByte(type);
+    }
+
+    /**
+     * Frames the current record with its length and checksum and adds it
+     * to the pending records, which are spilled to the journal file
+     * (without syncing) once they grow large.
+     */
+    private void endRecord() throws IOException {
+        byte[] payload = record.toByteArray();
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        pendingOut.writeInt(payload.length);
+        pendingOut.writeInt((int) crc.getValue());
+        pendingOut.write(payload);
+        pendingRecords++;
+        if (pending.size() >= SPILL_SIZE) {
+            seal();
+            // left for the flush to write if one is writing, rather than waiting for it
+            if (io.tryLock()) {
+                try {
+                    writeUnwritten(sequence, false);
+                } finally {
+                    io.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the pending records to the batches waiting to be written
+     *
+     * @return the sequence number of the last record appended
+     */
+    private long seal() {
+        if (pending.size() > 0) {
+            synchronized (unwritten) {
+                unwritten.add(new Batch(pending.toByteArray(), pendingRecords, sequence));
+            }
+            pending.reset();
+            pendingRecords = 0;
+        }
+        return sequence;
+    }
+
+    /**
+     * @return the size of the batches waiting to be written
+     */
+    private long unwrittenBytes() {
+        synchronized (unwritten) {
+            long size = 0;
+            for (Batch b : unwritten) {
+                size += b.records.length;
+            }
+            return size;
+        }
+    }
+
+    /**
+     * @param through The sequence number of the last record to write
+     * @return the next batch to write, or null if there is none up to that record
+     */
+    private Batch nextUnwritten(long through) {
+        synchronized (unwritten) {
+            Batch b = unwritten.peek();
+            return (b == null || b.lastSequence > through) ? null : b;
+        }
+    }
+
+    /**
+     * Appends the batches waiting to be written to the journal file, in
+     * order. A batch is only let go once it has been written, so that
+     * it is written again by the next flush if writing fails.<br>
+     * Must be called while holding the I/O lock.
+     *
+     * @param through The sequence number of the last record to write
+     * @param sync Whether to force the journal to disk afterwards
+     * @throws IOException if the journal has not been loaded, or can not be written
+     */
+    private void writeUnwritten(long through, boolean sync) throws IOException {
+        if (!loaded) {
+            // where the journal ends is not known, writing could overwrite it
+            throw new IOException("The journal has not been loaded, so it is not written to");
+        }
+        Batch batch = nextUnwritten(through);
+        if (batch == null && !(sync && unsynced)) {
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long start = System.nanoTime();
+            long before = logSize;
+            long records = 0;
+            if (batch != null && ch.size() < HEADER_SIZE) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+                header.flip();
+                ch.truncate(0);
+                writeFully(ch, header, 0);
+                before = 0;
+                logSize = HEADER_SIZE;
+            }
+            for (; batch != null; batch = nextUnwritten(through)) {
+                writeFully(ch, ByteBuffer.wrap(batch.records), logSize);
+                logSize += batch.records.length;
+                records += batch.count;
+                writtenSequence = batch.lastSequence;
+                unsynced = true;
+                synchronized (unwritten) {
+                    unwritten.poll();
+                }
+            }
+            long written = System.nanoTime();
+            if (records > 0) {
+                metrics().written(logSize - before, records, written - start);
+            }
+            if (sync) {
+                ch.force(false);
+                metrics().synced(System.nanoTime() - written);
+                unsynced = false;
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buffer, long position) throws IOException {
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            pos += ch.write(buffer, pos);
+        }
+    }
+
+    /**
+     * Framed records sealed together, waiting to be written
+     */
+    private static final class Batch {
+        private final byte[] records;
+        private final long count;
+        private final long lastSequence;
+
+        private Batch(byte[] records, long count, long lastSequence) {
+            this.records = records;
+            this.count = count;
+            this.lastSequence = lastSequence;
+        }
+    }
+
+    /**
+     * Rebuilds a CM's data by applying journal records to a snapshot
+     */
+    private static final class Replay {
+        private final IdIndex<Contact> contacts = new IdIndex<>();
+        private final IdIndex<Meeting> meetings = new IdIndex<>();
+        private final IntFunction<Contact> directory;
+        private final long baseSequence;
+        private final byte[] buffer = new byte[64];
+        private int nextContactId;
+        private int nextMeetingId;
+        private long lastSequence;
+
+        private Replay(Snapshot base, IntFunction<Contact> directory) {
+            this.directory = directory;
+            base.getContacts().forEach(c -> contacts.put(c.getId(), c));
+            base.getMeetings().forEach(m -> meetings.put(m.getId(), m));
+            baseSequence = base.getJournalSequence();
+            lastSequence = baseSequence;
+            nextContactId = base.getNextContactId();
+            nextMeetingId = base.getNextMeetingId();
+        }
+
+        private void apply(byte[] payload) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            long seq = in.readLong();
+            if (seq <= baseSequence) {
+                return;
+            }
+            lastSequence = seq;
+            byte type = in.readByte();
+            int id = in.readInt();
+            try {
+                applyRecord(in, type, id);
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Invalid journal record " + seq, ex);
+            }
+        }
+
+        /**
+         * @throws IllegalArgumentException if the record's contents are invalid, eg. an empty name
+         */
+        private void applyRecord(DataInputStream in, byte type, int id) throws IOException {
+            switch (type) {
+                case CONTACT:
+                    String name = SnapshotCodec.readString(in, buffer);
+                    contacts.put(id, new ContactImpl(id, name, SnapshotCodec.readString(in, buffer)));
+                    nextContactId = Math.max(nextContactId, id + 1);
+                    break;
+                case CONTACT_NOTES:
+                    contact(id).addNotes(SnapshotCodec.readString(in, buffer));
+                    break;
+                case FUTURE_MEETING:
+                case PAST_MEETING:
+                    long millis = in.readLong();
+                    TimeZone zone = TimeZone.getTimeZone(SnapshotCodec.readString(in, buffer));
+                    int attendees = SnapshotCodec.readCount(in, "attendee");
+                    if (attendees > contacts.size()) {
+                        throw new IOException("Meeting " + id + " has more contacts than there are");
+                    }
+                    int[] contactIds = new int[attendees];
+                    for (int i = 0; i < contactIds.length; i++) {
+                        contactIds[i] = contact(in.readInt()).getId();
+                    }
+                    contactIds = SnapshotCodec.sortContactIds(id, contactIds);
+                    meetings.put(id, (type == PAST_MEETING)
+                        ? new PastMeetingImpl(id, millis, zone, contactIds, directory,
+                            SnapshotCodec.readString(in, buffer))
+                        : new FutureMeetingImpl(id, millis, zone, contactIds, directory));
+                    nextMeetingId = Math.max(nextMeetingId, id + 1);
+                    break;
+                case MEETING_NOTES:
+                    Meeting meeting = meetings.get(id);
+                    if (meeting == null) {
+                        throw new IOException("Journal refers to unknown meeting " + id);
+                    }
+                    meetings.put(id, PastMeetingImpl.withNotes(meeting, SnapshotCodec.readString(in, buffer)));
+                    break;
+                default:
+                    throw new IOException("Unknown journal record type " + type);
+            }
+        }
+
+        private Contact contact(int id) throws IOException {
+            Contact c = contacts.get(id);
+            if (c == null) {
+                throw new IOException("Journal refers to unknown contact " + id);
+            }
+            return c;
+        }
+
+        private Snapshot toSnapshot() {
+            List<Contact> contactList = new ArrayList<>(contacts.size());
+            contacts.forEach(contactList::add);
+            List<Meeting> meetingList = new ArrayList<>(meetings.size());
+            meetings.forEach(meetingList::add);
+            return new Snapshot(contactList, meetingList, nextContactId, nextMeetingId, lastSequence);
+        }
+    }
+}
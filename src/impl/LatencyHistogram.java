@@ -0,0 +1,136 @@
+package impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies in nanoseconds, with buckets laid out as
+ * in HdrHistogram: values below 128 have a bucket each, and above
+ * that each power of two is split into 64 buckets, so any recorded
+ * value is known to within 1/64th (about 1.6%) however large it is.
+ * <br>
+ * Recording is lock-free and does not allocate, so it can be done on
+ * every call. The number of values is worked out from the buckets
+ * when it is read rather than counted separately, and percentiles are
+ * read from a copy of the buckets, so they may be slightly out of
+ * step with each other when values are recorded at the same time.
+ *
+ * @author lmignot
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int HALF = 1 << (SUB_BUCKET_BITS - 1);
+    private static final int BUCKETS = (65 - SUB_BUCKET_BITS) * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos The latency to record, negative values are recorded as 0
+     */
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        total.add(value);
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value)) {
+            m = max.get();
+        }
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    long count() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            n += counts.get(i);
+        }
+        return n;
+    }
+
+    /**
+     * @return the mean of the values recorded, or 0 if there are none
+     */
+    double mean() {
+        long n = count();
+        return (n == 0) ? 0 : (double) total.sum() / n;
+    }
+
+    /**
+     * @return the largest value recorded, or 0 if there are none
+     */
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * @param percentiles The percentiles, eg. 50, 99 and 99.9
+     * @return for each percentile, the highest value within the bucket
+     *         holding it but not more than the largest value recorded,
+     *         or 0 if there are no values
+     */
+    long[] percentiles(double... percentiles) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        long[] values = new long[percentiles.length];
+        if (n == 0) {
+            return values;
+        }
+        long largest = max();
+        for (int p = 0; p < percentiles.length; p++) {
+            long rank = Math.max(1, (long) Math.ceil(percentiles[p] / 100 * n));
+            long seen = 0;
+            int i = 0;
+            while (i < BUCKETS - 1 && (seen += snapshot[i]) < rank) {
+                i++;
+            }
+            values[p] = Math.min(highestValueIn(i), largest);
+        }
+        return values;
+    }
+
+    /**
+     * Clears the histogram, values recorded at the same time may be
+     * partly counted.
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        max.set(0);
+    }
+
+    /**
+     * @param value A value, 0 or more
+     * @return the bucket holding the value
+     */
+    static int bucketOf(long value) {
+        if (value < 2 * HALF) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        return (shift + 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    /**
+     * @param bucket A bucket
+     * @return the highest value held by the bucket
+     */
+    static long highestValueIn(int bucket) {
+        if (bucket < 2 * HALF) {
+            return bucket;
+        }
+        int shift = bucket / HALF - 1;
+        long mantissa = HALF + bucket % HALF;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
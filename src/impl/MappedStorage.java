@@ -0,0 +1,494 @@
+package impl;
+
+import spec.Contact;
+import spec.Meeting;
+import spec.PastMeeting;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Stores a Contact Manager's data in a fixed-layout file which is
+ * memory-mapped rather than read, so that records are only decoded
+ * when they are used.<br>
+ * A CM using this storage starts without loading any data. Contacts
+ * and meetings looked up by ID ({@code getMeeting(int)},
+ * {@code getContacts(int...)} and the past/future variants) are decoded
+ * straight from the mapped file, only the contacts are cached so that
+ * the same Contact is always returned for an ID. Everything else
+ * &ndash; the list queries, name search and any change &ndash; needs
+ * the in-memory indexes, so the first such call loads all the data.
+ * The heap used is therefore only bounded by what is looked up for as
+ * long as the CM is used for lookups by ID; after the first list query,
+ * name search or change the whole dataset is on the heap, as it is with
+ * the other storages.
+ * <br>
+ * The file is replaced atomically on flush, which is skipped if
+ * nothing has changed since the file was mapped.<br>
+ * Records may be read by several threads at once, the CM makes sure
+ * that no records are read while the data is loaded or flushed.
+ *
+ * <h3>Format (version 2)</h3>
+ * Numbers are big-endian, strings are an int byte length followed by
+ * that many bytes of UTF-8.
+ * <pre>
+ * 0   int     magic ("CMMP")
+ * 4   int     version
+ * 8   int     next contact ID
+ * 12  int     next meeting ID
+ * 16  int     contact table length (highest contact ID + 1)
+ * 20  int     meeting table length (highest meeting ID + 1)
+ * 24  long    contact table offset
+ * 32  long    meeting table offset
+ * 40  int     number of time zones
+ * 44  int     reserved
+ * 48  string  each time zone ID
+ *     long[]  contact table: file offset of each contact's record by ID, 0 if none
+ *     long[]  meeting table: file offset of each meeting's record by ID, 0 if none
+ *     records, each contact:
+ *       int id, string name, int number of notes, string each note
+ *       (in version 1, a single string of all the notes)
+ *     and each meeting:
+ *       byte kind (0 = future, 1 = past), int id, long date (epoch millis),
+ *       int time zone index, int number of contacts, int[] contact IDs,
+ *       string notes (past meetings only)
+ * </pre>
+ *
+ * @see AtomicFile
+ *
+ * @author lmignot
+ */
+public final class MappedStorage extends Storage {
+
+    static final int MAGIC = 0x434D4D50;
+    static final int VERSION = 2;
+
+    private static final int FIRST_VERSION = 1;
+
+    private static final int HEADER_SIZE = 48;
+    private static final byte FUTURE_MEETING = 0;
+    private static final byte PAST_MEETING = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final AtomicFile file;
+    private final ConcurrentMap<Integer, Contact> contactCache = new ConcurrentHashMap<>();
+    private volatile MappedFile mapped;
+
+    /**
+     * @param path The data file
+     * @throws NullPointerException if the path is null
+     */
+    public MappedStorage(Path path) {
+        file = new AtomicFile(path, metrics());
+    }
+
+    /**
+     * Maps the data file without decoding any records
+     *
+     * @return true, records are always read on demand
+     */
+    @Override
+    boolean openLazily() throws IOException {
+        if (mapped == null && file.exists()) {
+            mapped = file.read(MappedFile::new);
+        }
+        return true;
+    }
+
+    @Override
+    Contact loadContact(int id) throws IOException {
+        MappedFile file = mapped;
+        Contact c = contactCache.get(id);
+        if (c != null || file == null) {
+            return c;
+        }
+        long offset = file.contactOffset(id);
+        if (offset == 0) {
+            return null;
+        }
+        Cursor in = file.cursor(offset);
+        in.readInt();
+        ContactImpl contact;
+        try {
+            contact = new ContactImpl(id, in.readString());
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Invalid contact " + id, ex);
+        }
+        int noteCount = (file.version >= 2) ? in.readInt() : 1;
+        if (noteCount < 0) {
+            throw new IOException("Contact " + id + " has an invalid number of notes " + noteCount);
+        }
+        for (int i = 0; i < noteCount; i++) {
+            String note = in.readString();
+            if (!note.isEmpty()) {
+                contact.appendNote(note);
+            } else if (file.version >= 2) {
+                throw new IOException("Contact " + id + " has an empty note");
+            }
+        }
+        c = contact;
+        Contact cached = contactCache.putIfAbsent(id, c);
+        return (cached == null) ? c : cached;
+    }
+
+    @Override
+    Meeting loadMeeting(int id) throws IOException {
+        return readMeeting(id, null);
+    }
+
+    /**
+     * @param directory Looks up the meeting's contacts, or null to give
+     *                  the meeting a directory of just its own contacts
+     */
+    private Meeting readMeeting(int id, IntFunction<Contact> directory) throws IOException {
+        MappedFile file = mapped;
+        if (file == null) {
+            return null;
+        }
+        long offset = file.meetingOffset(id);
+        if (offset == 0) {
+            return null;
+        }
+        Cursor in = file.cursor(offset);
+        byte kind = in.readByte();
+        in.readInt();
+        long millis = in.readLong();
+        TimeZone zone = file.zone(in.readInt());
+        int attendees = in.readInt();
+        if (attendees < 0 || attendees >= file.contactTableLength) {
+            throw new IOException("Meeting " + id + " has an invalid number of contacts " + attendees);
+        }
+        int[] contactIds = new int[attendees];
+        Contact[] contacts = new Contact[contactIds.length];
+        for (int i = 0; i < contactIds.length; i++) {
+            contactIds[i] = in.readInt();
+            contacts[i] = loadContact(contactIds[i]);
+            if (contacts[i] == null) {
+                throw new IOException("Meeting " + id + " refers to unknown contact " + contactIds[i]);
+            }
+        }
+        contactIds = SnapshotCodec.sortContactIds(id, contactIds);
+        IntFunction<Contact> lookup = (directory != null) ? directory : AttendeeSet.directoryOf(Arrays.asList(contacts));
+        return (kind == PAST_MEETING)
+            ? new PastMeetingImpl(id, millis, zone, contactIds, lookup, in.readString())
+            : new FutureMeetingImpl(id, millis, zone, contactIds, lookup);
+    }
+
+    /**
+     * Decodes every record, after which the mapping is released as the
+     * CM holds all of its data in memory.
+     */
+    @Override
+    Snapshot load(IntFunction<Contact> directory) throws IOException {
+        openLazily();
+        if (mapped == null) {
+            return Snapshot.EMPTY;
+        }
+        List<Contact> contacts = new ArrayList<>();
+        for (int id = 1; id < mapped.contactTableLength; id++) {
+            Contact c = loadContact(id);
+            if (c != null) {
+                contacts.add(c);
+            }
+        }
+        List<Meeting> meetings = new ArrayList<>();
+        for (int id = 1; id < mapped.meetingTableLength; id++) {
+            Meeting m = readMeeting(id, directory);
+            if (m != null) {
+                meetings.add(m);
+            }
+        }
+        Snapshot snapshot = new Snapshot(contacts, meetings, mapped.nextContactId, mapped.nextMeetingId);
+        mapped = null;
+        contactCache.clear();
+        return snapshot;
+    }
+
+    @Override
+    long snapshotSize() throws IOException {
+        return file.size();
+    }
+
+    @Override
+    Flush prepareFlush(Supplier<Snapshot> snapshot) {
+        Snapshot s = snapshot.get();
+        return () -> file.write(ch -> write(s, ch), s.size());
+    }
+
+    /**
+     * Writes a snapshot in the mapped file format. The records are
+     * streamed after space left for the tables, which are filled
+     * in once every record's offset is known.
+     */
+    private static void write(Snapshot snapshot, FileChannel ch) throws IOException {
+        Map<String, Integer> zones = new LinkedHashMap<>();
+        int maxMeetingId = 0;
+        for (Meeting m : snapshot.getMeetings()) {
+            zones.putIfAbsent(MeetingImpl.zoneOf(m).getID(), zones.size());
+            maxMeetingId = Math.max(maxMeetingId, m.getId());
+        }
+        int maxContactId = 0;
+        for (Contact c : snapshot.getContacts()) {
+            maxContactId = Math.max(maxContactId, c.getId());
+        }
+
+        ByteArrayOutputStream zoneBytes = new ByteArrayOutputStream();
+        DataOutputStream zoneOut = new DataOutputStream(zoneBytes);
+        for (String zone : zones.keySet()) {
+            SnapshotCodec.writeString(zoneOut, zone);
+        }
+
+        long[] contactTable = new long[maxContactId + 1];
+        long[] meetingTable = new long[maxMeetingId + 1];
+        long contactTableOffset = HEADER_SIZE + zoneBytes.size();
+        long meetingTableOffset = contactTableOffset + 8L * contactTable.length;
+        long position = meetingTableOffset + 8L * meetingTable.length;
+
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        DataOutputStream recordOut = new DataOutputStream(record);
+        ch.position(position);
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(ch), BUFFER_SIZE);
+
+        for (Contact c : snapshot.getContacts()) {
+            record.reset();
+            recordOut.writeInt(c.getId());
+            SnapshotCodec.writeString(recordOut, c.getName());
+            List<String> notes = ContactImpl.notesOf(c);
+            recordOut.writeInt(notes.size());
+            for (String note : notes) {
+                SnapshotCodec.writeString(recordOut, note);
+            }
+            contactTable[c.getId()] = position;
+            record.writeTo(out);
+            position += record.size();
+        }
+        for (Meeting m : snapshot.getMeetings()) {
+            boolean past = m instanceof PastMeeting;
+            record.reset();
+            recordOut.writeByte(past ? PAST_MEETING : FUTURE_MEETING);
+            recordOut.writeInt(m.getId());
+            recordOut.writeLong(MeetingImpl.timeOf(m));
+            recordOut.writeInt(zones.get(MeetingImpl.zoneOf(m).getID()));
+            int[] contactIds = MeetingImpl.contactIdsOf(m);
+            recordOut.writeInt(contactIds.length);
+            for (int contactId : contactIds) {
+                recordOut.writeInt(contactId);
+            }
+            if (past) {
+                SnapshotCodec.writeString(recordOut, ((PastMeeting) m).getNotes());
+            }
+            meetingTable[m.getId()] = position;
+            record.writeTo(out);
+            position += record.size();
+        }
+        out.flush();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + zoneBytes.size());
+        header.putInt(MAGIC).putInt(VERSION)
+            .putInt(snapshot.getNextContactId()).putInt(snapshot.getNextMeetingId())
+            .putInt(contactTable.length).putInt(meetingTable.length)
+            .putLong(contactTableOffset).putLong(meetingTableOffset)
+            .putInt(zones.size()).putInt(0)
+            .put(zoneBytes.toByteArray());
+        header.flip();
+        writeFully(ch, header, 0);
+        writeTable(ch, contactTable, contactTableOffset);
+        writeTable(ch, meetingTable, meetingTableOffset);
+    }
+
+    private static void writeTable(FileChannel ch, long[] table, long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = offset;
+        for (long value : table) {
+            if (!buffer.hasRemaining()) {
+                buffer.flip();
+                position = writeFully(ch, buffer, position);
+                buffer.clear();
+            }
+            buffer.putLong(value);
+        }
+        buffer.flip();
+        writeFully(ch, buffer, position);
+    }
+
+    private static long writeFully(FileChannel ch, ByteBuffer buffer, long position) throws IOException {
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            pos += ch.write(buffer, pos);
+        }
+        return pos;
+    }
+
+    /**
+     * A read-only mapping of a whole data file.<br>
+     * A single mapping is limited to 2GB so the file is mapped in
+     * segments, values which straddle two segments are read byte by byte.
+     */
+    private static final class MappedFile {
+        private static final int SEGMENT_BITS = 30;
+        private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+
+        private final MappedByteBuffer[] segments;
+        private final long size;
+        private final int version;
+        private final int nextContactId;
+        private final int nextMeetingId;
+        private final int contactTableLength;
+        private final int meetingTableLength;
+        private final long contactTableOffset;
+        private final long meetingTableOffset;
+        private final TimeZone[] zones;
+
+        private MappedFile(Path path) throws IOException {
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+                size = ch.size();
+                if (size < HEADER_SIZE) {
+                    throw new IOException("Not a contact manager data file");
+                }
+                segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+                for (int i = 0; i < segments.length; i++) {
+                    long start = (long) i << SEGMENT_BITS;
+                    segments[i] = ch.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+                }
+            }
+            if (getInt(0) != MAGIC) {
+                throw new IOException("Not a contact manager data file");
+            }
+            version = getInt(4);
+            if (version < FIRST_VERSION || version > VERSION) {
+                throw new IOException("Unsupported data file version " + version);
+            }
+            nextContactId = getInt(8);
+            nextMeetingId = getInt(12);
+            contactTableLength = getInt(16);
+            meetingTableLength = getInt(20);
+            contactTableOffset = getLong(24);
+            meetingTableOffset = getLong(32);
+            if (contactTableOffset + 8L * contactTableLength > size
+                    || meetingTableOffset + 8L * meetingTableLength > size) {
+                throw new IOException("Truncated data file");
+            }
+            // each time zone ID takes at least the 4 bytes of its length
+            int zoneCount = getInt(40);
+            if (zoneCount < 0 || zoneCount > (size - HEADER_SIZE) / 4) {
+                throw new IOException("Invalid time zone count " + zoneCount);
+            }
+            zones = new TimeZone[zoneCount];
+            Cursor in = cursor(HEADER_SIZE);
+            for (int i = 0; i < zones.length; i++) {
+                zones[i] = TimeZone.getTimeZone(in.readString());
+            }
+        }
+
+        private long contactOffset(int id) {
+            return (id <= 0 || id >= contactTableLength) ? 0 : getLong(contactTableOffset + 8L * id);
+        }
+
+        private long meetingOffset(int id) {
+            return (id <= 0 || id >= meetingTableLength) ? 0 : getLong(meetingTableOffset + 8L * id);
+        }
+
+        private TimeZone zone(int index) throws IOException {
+            if (index < 0 || index >= zones.length) {
+                throw new IOException("Invalid time zone index " + index);
+            }
+            return zones[index];
+        }
+
+        private Cursor cursor(long position) {
+            return new Cursor(this, position);
+        }
+
+        private byte get(long position) {
+            return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & (SEGMENT_SIZE - 1)));
+        }
+
+        private int getInt(long position) {
+            int offset = (int) (position & (SEGMENT_SIZE - 1));
+            if (offset + 4 <= SEGMENT_SIZE) {
+                return segments[(int) (position >>> SEGMENT_BITS)].getInt(offset);
+            }
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value = (value << 8) | (get(position + i) & 0xFF);
+            }
+            return value;
+        }
+
+        private long getLong(long position) {
+            return ((long) getInt(position) << 32) | (getInt(position + 4) & 0xFFFFFFFFL);
+        }
+    }
+
+    /**
+     * Reads consecutive values from a mapped file
+     */
+    private static final class Cursor {
+        private final MappedFile file;
+        private long position;
+
+        private Cursor(MappedFile file, long position) {
+            this.file = file;
+            this.position = position;
+        }
+
+        private byte readByte() throws IOException {
+            checkAvailable(1);
+            return file.get(position++);
+        }
+
+        private int readInt() throws IOException {
+            checkAvailable(4);
+            int value = file.getInt(position);
+            position += 4;
+            return value;
+        }
+
+        private long readLong() throws IOException {
+            checkAvailable(8);
+            long value = file.getLong(position);
+            position += 8;
+            return value;
+        }
+
+        private String readString() throws IOException {
+            int length = readInt();
+            if (length < 0) {
+                throw new IOException("Invalid string length " + length);
+            }
+            checkAvailable(length);
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = file.get(position + i);
+            }
+            position += length;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private void checkAvailable(long bytes) throws IOException {
+            if (position < 0 || position + bytes > file.size) {
+                throw new IOException("Truncated data file");
+            }
+        }
+    }
+}
@@ -3,22 +3,77 @@ package impl;
 import spec.Contact;
 import spec.Meeting;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.Calendar;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.IntFunction;
 
 /**
- * Implementation of a Meeting
+ * Implementation of a Meeting<br>
+ * The date is held as epoch milliseconds and a time zone rather than
+ * as a Calendar, along with the day number used by the calendar index.
+ * Comparisons and indexing use these directly, a Calendar is only
+ * built when {@link #getDate()} is called.
+ * <br>
+ * The contacts are held as a sorted array of their IDs and looked up
+ * through a directory, normally the contact manager's, when
+ * {@link #getContacts()} is used. Two meetings have the same contacts
+ * if they have the same contact IDs, which within a contact manager
+ * is the same as having the same contacts.
  * @see Meeting
  *
  * @author lmignot
  */
 public abstract class MeetingImpl implements Meeting, Serializable {
 
-    private final Calendar meetingDate;
-    private final int meetingId;
-    private final Set<Contact> meetingContacts;
+    private static final long serialVersionUID = 7825988074779261270L;
+
+    /**
+     * The serialized form is unchanged from when the date was held
+     * as a Calendar, so data files written with Java serialization
+     * by earlier versions can still be read.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("meetingDate", Calendar.class),
+        new ObjectStreamField("meetingId", int.class),
+        new ObjectStreamField("meetingContacts", Set.class)
+    };
+
+    /**
+     * Time zones are shared between meetings, most meetings are
+     * in the same few zones.
+     */
+    private static final ConcurrentMap<String, TimeZone> ZONES = new ConcurrentHashMap<>();
+
+    /**
+     * Orders meetings by date, meetings at the same time are ordered by ID.<br>
+     * IDs are unique so this ordering is consistent with a sorted set,
+     * it differs from {@link #equals(Object)} which ignores the ID.
+     */
+    public static final Comparator<Meeting> CHRONOLOGICAL = Comparator
+        .comparingLong(MeetingImpl::timeOf)
+        .thenComparingInt(Meeting::getId);
+
+    // not final so that they can be set when deserializing
+    private transient long meetingTime;
+    private transient long meetingDay;
+    private transient TimeZone meetingZone;
+    private transient int meetingId;
+    private transient int[] meetingContactIds;
+    private transient IntFunction<Contact> meetingDirectory;
+    private transient int meetingHash;
 
     /**
      * Creates a Meeting
@@ -26,23 +81,64 @@ public abstract class MeetingImpl implements Meeting, Serializable {
      * Extending classes should implement the same argument checks
      *
      * @param id A unique positive ID &ndash; this class does not check for uniqueness
-     * @param date The meeting's date
+     * @param date The meeting's date, later changes to it do not affect the meeting
      * @param contacts The contacts attending this meeting. Should not be empty
      *
      * @throws NullPointerException if the date or contacts are null
      * @throws IllegalArgumentException if the id is negative or 0,
-     *                                  or if the set of contacts is empty
+     *                                  if the set of contacts is empty
+     *                                  or if two contacts have the same ID
      */
     public MeetingImpl(int id, Calendar date, Set<Contact> contacts) {
-        Objects.requireNonNull(date);
+        this(id, Objects.requireNonNull(date).getTimeInMillis(), date.getTimeZone(), contacts);
+    }
+
+    /**
+     * Creates a Meeting from a time and time zone
+     *
+     * @see MeetingImpl#MeetingImpl(int, Calendar, Set)
+     * @param time The meeting's date and time in epoch milliseconds
+     * @param zone The meeting's time zone
+     */
+    private MeetingImpl(int id, long time, TimeZone zone, Set<Contact> contacts) {
+        Objects.requireNonNull(zone);
         Objects.requireNonNull(contacts);
-        if (id <= 0 || contacts.isEmpty()) {
+        init(id, time, zone, AttendeeSet.idsOf(contacts), AttendeeSet.directoryOf(contacts));
+    }
+
+    /**
+     * Creates a Meeting whose contacts are looked up by ID
+     *
+     * @see MeetingImpl#MeetingImpl(int, Calendar, Set)
+     * @param time The meeting's date and time in epoch milliseconds
+     * @param zone The meeting's time zone
+     * @param contactIds The contacts' IDs in ascending order, without duplicates.
+     *                   The array is used as is, so must not be changed later
+     * @param directory Looks up the contacts by ID
+     */
+    MeetingImpl(int id, long time, TimeZone zone, int[] contactIds, IntFunction<Contact> directory) {
+        Objects.requireNonNull(zone);
+        Objects.requireNonNull(directory);
+        init(id, time, zone, contactIds, directory);
+    }
+
+    private void init(int id, long time, TimeZone zone, int[] contactIds, IntFunction<Contact> directory) {
+        if (id <= 0 || contactIds.length == 0) {
             throw new IllegalArgumentException();
         }
 
         meetingId = id;
-        meetingDate = date;
-        meetingContacts = contacts;
+        meetingContactIds = contactIds;
+        meetingDirectory = directory;
+        setDate(time, zone);
+        meetingHash = 31 * Long.hashCode(time) + Arrays.hashCode(contactIds);
+    }
+
+    private void setDate(long time, TimeZone zone) {
+        TimeZone shared = ZONES.computeIfAbsent(zone.getID(), zoneId -> (TimeZone) zone.clone());
+        meetingTime = time;
+        meetingZone = shared.hasSameRules(zone) ? shared : (TimeZone) zone.clone();
+        meetingDay = CalendarIndex.epochDay(time, meetingZone);
     }
 
     /**
@@ -54,19 +150,99 @@ public abstract class MeetingImpl implements Meeting, Serializable {
     }
 
     /**
+     * Returns a new Calendar set to the meeting's date and time zone,
+     * changing it does not change the meeting.
+     *
      * @see Meeting#getDate()
      */
     @Override
     public Calendar getDate() {
-        return meetingDate;
+        Calendar date = new GregorianCalendar((TimeZone) meetingZone.clone());
+        date.setTimeInMillis(meetingTime);
+        return date;
     }
 
     /**
+     * Returns an unmodifiable view of the contacts, which are
+     * looked up by ID as the set is used.
+     *
      * @see Meeting#getContacts()
      */
     @Override
     public Set<Contact> getContacts() {
-        return meetingContacts;
+        return new AttendeeSet(meetingContactIds, meetingDirectory);
+    }
+
+    /**
+     * @return the meeting's date and time in epoch milliseconds
+     */
+    long getTimeInMillis() {
+        return meetingTime;
+    }
+
+    /**
+     * @return the number of the meeting's day in its time zone
+     * @see CalendarIndex#epochDay(long, TimeZone)
+     */
+    long getEpochDay() {
+        return meetingDay;
+    }
+
+    /**
+     * @return the meeting's time zone, shared with other meetings so it must not be changed
+     */
+    TimeZone getTimeZone() {
+        return meetingZone;
+    }
+
+    /**
+     * @param meeting Any meeting
+     * @return the meeting's date and time in epoch milliseconds
+     */
+    static long timeOf(Meeting meeting) {
+        return (meeting instanceof MeetingImpl)
+            ? ((MeetingImpl) meeting).meetingTime
+            : meeting.getDate().getTimeInMillis();
+    }
+
+    /**
+     * @param meeting Any meeting
+     * @return the number of the meeting's day in its time zone
+     */
+    static long epochDayOf(Meeting meeting) {
+        return (meeting instanceof MeetingImpl)
+            ? ((MeetingImpl) meeting).meetingDay
+            : CalendarIndex.epochDay(meeting.getDate());
+    }
+
+    /**
+     * @param meeting Any meeting
+     * @return the meeting's contact IDs in ascending order, which must not be changed
+     */
+    static int[] contactIdsOf(Meeting meeting) {
+        return (meeting instanceof MeetingImpl)
+            ? ((MeetingImpl) meeting).meetingContactIds
+            : AttendeeSet.idsOf(meeting.getContacts());
+    }
+
+    /**
+     * @param meeting Any meeting
+     * @return a directory holding the meeting's contacts
+     */
+    static IntFunction<Contact> directoryOf(Meeting meeting) {
+        return (meeting instanceof MeetingImpl)
+            ? ((MeetingImpl) meeting).meetingDirectory
+            : AttendeeSet.directoryOf(meeting.getContacts());
+    }
+
+    /**
+     * @param meeting Any meeting
+     * @return the meeting's time zone, which must not be changed
+     */
+    static TimeZone zoneOf(Meeting meeting) {
+        return (meeting instanceof MeetingImpl)
+            ? ((MeetingImpl) meeting).meetingZone
+            : meeting.getDate().getTimeZone();
     }
 
     /**
@@ -74,12 +250,13 @@ public abstract class MeetingImpl implements Meeting, Serializable {
      * This is required in order to be able to override
      * {@code java.lang.Object.equals()} so that we can use
      * {@code distinct()} in the Java 8 streams api.<br>
+     * It is worked out once, when the meeting is created.
      *
      * @return the hashCode
      */
     @Override
     public int hashCode() {
-        return meetingDate.hashCode() + meetingContacts.hashCode();
+        return meetingHash;
     }
 
     /**
@@ -95,12 +272,42 @@ public abstract class MeetingImpl implements Meeting, Serializable {
      */
     @Override
     public boolean equals(Object other) {
+        if (other instanceof MeetingImpl) {
+            MeetingImpl tmp = (MeetingImpl) other;
+            return tmp.meetingTime == meetingTime &&
+                    tmp.meetingHash == meetingHash &&
+                    Arrays.equals(tmp.meetingContactIds, meetingContactIds);
+        }
         if (other instanceof Meeting) {
             Meeting tmp = (Meeting) other;
-            return tmp.getDate().compareTo(getDate()) == 0 &&
+            return timeOf(tmp) == meetingTime &&
                     tmp.getContacts().containsAll(getContacts()) &&
                     getContacts().containsAll(tmp.getContacts());
         }
         return false;
     }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("meetingDate", getDate());
+        fields.put("meetingId", meetingId);
+        fields.put("meetingContacts", new HashSet<>(getContacts()));
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        Calendar date = (Calendar) fields.get("meetingDate", null);
+        Set<Contact> contacts = (Set<Contact>) fields.get("meetingContacts", null);
+        if (date == null || contacts == null) {
+            throw new IOException("Invalid meeting");
+        }
+        try {
+            init(fields.get("meetingId", 0), date.getTimeInMillis(), date.getTimeZone(),
+                AttendeeSet.idsOf(contacts), AttendeeSet.directoryOf(contacts));
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Invalid meeting", ex);
+        }
+    }
 }
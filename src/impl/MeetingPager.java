@@ -0,0 +1,87 @@
+package impl;
+
+import spec.Meeting;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates over a meeting list one page at a time, each page starting
+ * after the last meeting of the previous page.<br>
+ * Pages are fetched as they are needed, so only one page is held at
+ * a time and no lock is held between pages. As the position is a
+ * meeting's date and ID rather than an offset, meetings added or
+ * changed between pages do not cause any meeting to be skipped or
+ * repeated, meetings added after the current position are included.
+ *
+ * @param <T> The type of meeting
+ *
+ * @author lmignot
+ */
+final class MeetingPager<T extends Meeting> implements Iterator<T> {
+
+    static final int DEFAULT_PAGE_SIZE = 256;
+
+    /**
+     * Fetches a page of meetings
+     *
+     * @param <T> The type of meeting
+     */
+    @FunctionalInterface
+    interface Pages<T extends Meeting> {
+        /**
+         * @param after The last meeting of the previous page, or null for the first page
+         * @param limit The maximum number of meetings
+         * @return the meetings after {@code after} in chronological order
+         */
+        List<T> fetch(Meeting after, int limit);
+    }
+
+    private final Pages<T> pages;
+    private final int pageSize;
+    private List<T> page;
+    private int next;
+
+    /**
+     * The first page is fetched straight away, so that any invalid
+     * arguments are reported when the iterator is created.
+     *
+     * @param pages Fetches the pages
+     * @param pageSize The number of meetings to fetch at a time
+     */
+    MeetingPager(Pages<T> pages, int pageSize) {
+        this.pages = pages;
+        this.pageSize = pageSize;
+        page = pages.fetch(null, pageSize);
+    }
+
+    /**
+     * @return a sequential stream of the meetings
+     */
+    Stream<T> stream() {
+        return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT),
+            false
+        );
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == page.size() && page.size() == pageSize) {
+            page = pages.fetch(page.get(next - 1), pageSize);
+            next = 0;
+        }
+        return next < page.size();
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) { throw new NoSuchElementException(); }
+        return page.get(next++);
+    }
+}
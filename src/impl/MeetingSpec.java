@@ -0,0 +1,96 @@
+package impl;
+
+import spec.Contact;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The details of a new meeting, for adding meetings in a batch.<br>
+ * A meeting with notes is added as a past meeting, a meeting
+ * without notes as a future meeting.
+ *
+ * @see ContactManagerImpl#addMeetings(java.util.List)
+ *
+ * @author lmignot
+ */
+public final class MeetingSpec {
+
+    private final Set<Contact> contacts;
+    private final Calendar date;
+    private final String notes;
+
+    /**
+     * Describes a future meeting
+     *
+     * @param contacts The contacts attending the meeting
+     * @param date The date of the meeting, later changes to it do not affect the spec
+     * @throws IllegalArgumentException if the set of contacts is empty
+     * @throws NullPointerException if the contacts or the date are null
+     */
+    public MeetingSpec(Set<Contact> contacts, Calendar date) {
+        Objects.requireNonNull(contacts);
+        Objects.requireNonNull(date);
+        if (contacts.isEmpty()) {
+            throw new IllegalArgumentException();
+        }
+        this.contacts = Collections.unmodifiableSet(new HashSet<>(contacts));
+        this.date = (Calendar) date.clone();
+        this.notes = null;
+    }
+
+    /**
+     * Describes a past meeting
+     *
+     * @see MeetingSpec#MeetingSpec(Set, Calendar)
+     * @param notes The notes taken at the meeting
+     * @throws IllegalArgumentException if the set of contacts is empty or the notes are empty
+     * @throws NullPointerException if the contacts, the date or the notes are null
+     */
+    public MeetingSpec(Set<Contact> contacts, Calendar date, String notes) {
+        Objects.requireNonNull(contacts);
+        Objects.requireNonNull(date);
+        Objects.requireNonNull(notes);
+        if (contacts.isEmpty() || notes.equals("")) {
+            throw new IllegalArgumentException();
+        }
+        this.contacts = Collections.unmodifiableSet(new HashSet<>(contacts));
+        this.date = (Calendar) date.clone();
+        this.notes = notes;
+    }
+
+    public Set<Contact> getContacts() {
+        return contacts;
+    }
+
+    /**
+     * @return a copy of the date of the meeting
+     */
+    public Calendar getDate() {
+        return (Calendar) date.clone();
+    }
+
+    /**
+     * @return the date of the meeting itself, which must not be changed
+     */
+    Calendar date() {
+        return date;
+    }
+
+    /**
+     * @return the notes, or null for a future meeting
+     */
+    public String getNotes() {
+        return notes;
+    }
+
+    /**
+     * @return true if this describes a past meeting
+     */
+    public boolean isPast() {
+        return notes != null;
+    }
+}
@@ -0,0 +1,195 @@
+package impl;
+
+import spec.Contact;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An n-gram index over contact names for substring search.<br>
+ * Every contact is listed under each distinct sequence of one, two
+ * and three characters in its name, each list is kept in ID order.
+ * <ul>
+ *     <li>
+ *     A query of up to three characters is itself an n-gram, so its
+ *     list holds exactly the contacts whose names contain it.
+ *     </li>
+ *     <li>
+ *     A longer query can only be contained in a name which contains
+ *     every trigram of the query, so the candidates are found by
+ *     intersecting the query's trigram lists, starting with the rarest.
+ *     The candidates still have to be checked with
+ *     {@link String#contains(CharSequence)}, as the trigrams may not
+ *     be next to each other in the name.
+ *     </li>
+ * </ul>
+ *
+ * @author lmignot
+ */
+final class NameIndex {
+
+    static final int MAX_GRAM_LENGTH = 3;
+
+    private static final Contact[] EMPTY = new Contact[0];
+
+    private final Map<Long, Postings> postings = new HashMap<>();
+
+    /**
+     * Adds a contact under each n-gram of its name
+     *
+     * @param contact The contact to index
+     */
+    void add(Contact contact) {
+        String name = contact.getName();
+        Set<Long> grams = new HashSet<>();
+        for (int length = 1; length <= MAX_GRAM_LENGTH; length++) {
+            for (int i = 0; i + length <= name.length(); i++) {
+                Long gram = gram(name, i, length);
+                if (grams.add(gram)) {
+                    postings.computeIfAbsent(gram, g -> new Postings()).add(contact);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the contacts whose names may contain the query.<br>
+     * All contacts whose names do contain it are included, and for a
+     * query of up to {@link #MAX_GRAM_LENGTH} characters no others.
+     *
+     * @param query The text to search for
+     * @return the candidate contacts in ID order
+     * @throws IllegalArgumentException if the query is empty
+     */
+    Collection<Contact> candidates(String query) {
+        if (query.isEmpty()) {
+            throw new IllegalArgumentException();
+        }
+        if (query.length() <= MAX_GRAM_LENGTH) {
+            Postings list = postings.get(gram(query, 0, query.length()));
+            return (list == null) ? Collections.emptyList() : list.asList();
+        }
+
+        List<Postings> lists = new ArrayList<>();
+        for (int i = 0; i + MAX_GRAM_LENGTH <= query.length(); i++) {
+            Postings list = postings.get(gram(query, i, MAX_GRAM_LENGTH));
+            if (list == null) {
+                return Collections.emptyList();
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(p -> p.size));
+
+        Postings rarest = lists.get(0);
+        Contact[] candidates = Arrays.copyOf(rarest.contacts, rarest.size);
+        int[] ids = Arrays.copyOf(rarest.ids, rarest.size);
+        int count = rarest.size;
+        for (int l = 1; l < lists.size() && count > 0; l++) {
+            Postings list = lists.get(l);
+            if (list != rarest) {
+                count = list.retainAll(candidates, ids, count);
+            }
+        }
+        return Arrays.asList(candidates).subList(0, count);
+    }
+
+    /**
+     * Packs an n-gram of up to three characters and its length into a long
+     */
+    private static Long gram(String s, int start, int length) {
+        long gram = length;
+        for (int i = start; i < start + length; i++) {
+            gram = (gram << 16) | s.charAt(i);
+        }
+        return gram;
+    }
+
+    /**
+     * The contacts listed under an n-gram in ID order, with
+     * their IDs alongside for fast intersection
+     */
+    private static final class Postings {
+        private Contact[] contacts = EMPTY;
+        private int[] ids = new int[0];
+        private int size;
+
+        private void add(Contact contact) {
+            if (size == contacts.length) {
+                int capacity = Math.max(4, size * 2);
+                contacts = Arrays.copyOf(contacts, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+            }
+            // IDs are allocated in increasing order, so this is almost always an append
+            int id = contact.getId();
+            int i = size;
+            while (i > 0 && ids[i - 1] > id) {
+                contacts[i] = contacts[i - 1];
+                ids[i] = ids[i - 1];
+                i--;
+            }
+            contacts[i] = contact;
+            ids[i] = id;
+            size++;
+        }
+
+        /**
+         * Removes the candidates which are not in this list, the
+         * candidates are compacted at the start of the arrays.
+         *
+         * @param candidates Contacts in ID order
+         * @param candidateIds Their IDs
+         * @param count The number of candidates
+         * @return the number of candidates kept
+         */
+        private int retainAll(Contact[] candidates, int[] candidateIds, int count) {
+            int kept = 0;
+            int pos = 0;
+            for (int i = 0; i < count && pos < size; i++) {
+                pos = gallop(candidateIds[i], pos);
+                if (pos < size && ids[pos] == candidateIds[i]) {
+                    candidates[kept] = candidates[i];
+                    candidateIds[kept] = candidateIds[i];
+                    kept++;
+                }
+            }
+            return kept;
+        }
+
+        /**
+         * Finds the first position at or after from whose ID is not less than
+         * the given ID, searching exponentially further ahead then bisecting
+         */
+        private int gallop(int id, int from) {
+            int low = from;
+            int step = 1;
+            int high = from;
+            while (high < size && ids[high] < id) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            high = Math.min(high, size);
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ids[mid] < id) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private List<Contact> asList() {
+            return Collections.unmodifiableList(Arrays.asList(contacts).subList(0, size));
+        }
+    }
+}
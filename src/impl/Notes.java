@@ -0,0 +1,137 @@
+package impl;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The notes of a past meeting or a contact, held as the notes before
+ * the last addition plus the text that was added.<br>
+ * Adding notes creates a new instance that shares the earlier notes
+ * rather than copying them, so it takes the same time however long
+ * the notes are. The notes are joined, separated by a new line, the
+ * first time {@link #toString()} is called and the result is kept;
+ * the earlier notes are then let go so that only one copy is held.
+ * Where each addition ends in the joined notes is kept with them, so
+ * that the additions can still be told apart, see {@link #asList()}.
+ * <br>
+ * Instances cannot be changed and can be shared between threads.
+ *
+ * @author lmignot
+ */
+final class Notes {
+
+    private static final int[] NO_ENDS = {};
+
+    static final Notes NONE = new Notes("");
+
+    private final String text;
+    private final int length;
+    // the number of additions, notes added after empty notes replace them
+    private final int count;
+    // cleared once joined, so is only null if joined has been set
+    private volatile Notes previous;
+    private volatile String joined;
+    // where each addition ends in the joined notes, set before joined so is seen with it
+    private int[] ends;
+
+    private Notes(String notes) {
+        text = notes;
+        length = notes.length();
+        count = notes.isEmpty() ? 0 : 1;
+        ends = notes.isEmpty() ? NO_ENDS : new int[] { length };
+        joined = notes;
+    }
+
+    private Notes(Notes previous, String text) {
+        this.text = text;
+        this.length = (previous.length == 0) ? text.length() : previous.length + 1 + text.length();
+        this.count = (previous.length == 0) ? 1 : previous.count + 1;
+        this.previous = previous;
+    }
+
+    /**
+     * @param notes Some notes
+     * @return the notes
+     */
+    static Notes of(String notes) {
+        return Objects.requireNonNull(notes).isEmpty() ? NONE : new Notes(notes);
+    }
+
+    /**
+     * @param text The notes to add
+     * @return these notes followed by the text, on a new line unless these notes are empty
+     */
+    Notes appended(String text) {
+        return new Notes(this, text);
+    }
+
+    /**
+     * @return the notes joined into one string
+     */
+    @Override
+    public String toString() {
+        String s = joined;
+        if (s != null) {
+            return s;
+        }
+        // walks back to the nearest joined notes, without recursing as there may be many additions
+        Deque<String> added = new ArrayDeque<>();
+        Notes n = this;
+        while ((s = n.joined) == null) {
+            Notes p = n.previous;
+            if (p == null) {
+                s = n.joined;
+                break;
+            }
+            added.push(n.text);
+            n = p;
+        }
+        int[] joinedEnds = Arrays.copyOf(n.ends, count);
+        int next = n.ends.length;
+        StringBuilder sb = new StringBuilder(length).append(s);
+        for (String t : added) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            } else {
+                next = 0;
+            }
+            sb.append(t);
+            joinedEnds[next++] = sb.length();
+        }
+        s = sb.toString();
+        ends = joinedEnds;
+        joined = s;
+        previous = null;
+        return s;
+    }
+
+    /**
+     * Gives each addition on its own, which may itself hold new lines.
+     * The additions are taken from the joined notes when asked for,
+     * rather than kept as well.
+     *
+     * @return an unmodifiable list of the additions, in the order they were made
+     */
+    List<String> asList() {
+        String s = toString();
+        int[] e = ends;
+        return new AbstractList<String>() {
+            @Override
+            public String get(int index) {
+                if (index < 0 || index >= e.length) {
+                    throw new IndexOutOfBoundsException(Integer.toString(index));
+                }
+                return s.substring((index == 0) ? 0 : e[index - 1] + 1, e[index]);
+            }
+
+            @Override
+            public int size() {
+                return e.length;
+            }
+        };
+    }
+}
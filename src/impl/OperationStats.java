@@ -0,0 +1,112 @@
+package impl;
+
+import java.beans.ConstructorProperties;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Statistics for one Contact Manager operation, as recorded by an
+ * {@link InstrumentedContactManager}.<br>
+ * Latencies are in nanoseconds and include calls which failed.
+ * Instances are snapshots, they do not change as more calls are recorded.
+ *
+ * @author lmignot
+ */
+public final class OperationStats {
+
+    private final long calls;
+    private final Map<String, Long> errors;
+    private final double meanNanos;
+    private final long p50Nanos;
+    private final long p90Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long maxNanos;
+
+    /**
+     * @param calls The number of calls
+     * @param errors The number of calls which failed, by exception class name
+     * @param meanNanos The mean latency
+     * @param p50Nanos The median latency
+     * @param p90Nanos The 90th percentile latency
+     * @param p99Nanos The 99th percentile latency
+     * @param p999Nanos The 99.9th percentile latency
+     * @param maxNanos The highest latency
+     */
+    @ConstructorProperties({ "calls", "errors", "meanNanos", "p50Nanos", "p90Nanos", "p99Nanos", "p999Nanos",
+        "maxNanos" })
+    public OperationStats(long calls, Map<String, Long> errors, double meanNanos, long p50Nanos, long p90Nanos,
+                          long p99Nanos, long p999Nanos, long maxNanos) {
+        this.calls = calls;
+        this.errors = Collections.unmodifiableMap(new TreeMap<>(errors));
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p90Nanos = p90Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+    /**
+     * @return the number of calls, including those which failed
+     */
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * @return the number of calls which failed, by the class name of the exception thrown
+     */
+    public Map<String, Long> getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the mean latency in nanoseconds
+     */
+    public double getMeanNanos() {
+        return meanNanos;
+    }
+
+    /**
+     * @return the median latency in nanoseconds
+     */
+    public long getP50Nanos() {
+        return p50Nanos;
+    }
+
+    /**
+     * @return the 90th percentile latency in nanoseconds
+     */
+    public long getP90Nanos() {
+        return p90Nanos;
+    }
+
+    /**
+     * @return the 99th percentile latency in nanoseconds
+     */
+    public long getP99Nanos() {
+        return p99Nanos;
+    }
+
+    /**
+     * @return the 99.9th percentile latency in nanoseconds
+     */
+    public long getP999Nanos() {
+        return p999Nanos;
+    }
+
+    /**
+     * @return the highest latency in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("calls=%d errors=%s mean=%.0fns p50=%dns p90=%dns p99=%dns p99.9=%dns max=%dns",
+            calls, errors, meanNanos, p50Nanos, p90Nanos, p99Nanos, p999Nanos, maxNanos);
+    }
+}
@@ -1,16 +1,26 @@
 package impl;
 
 import spec.Contact;
+import spec.Meeting;
 import spec.PastMeeting;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.Calendar;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TimeZone;
+import java.util.function.IntFunction;
 
 /**
  * A Past Meeting is a meeting that has happened in the past
- * It contains notes.
+ * It contains notes.<br>
+ * Adding notes shares the meeting's existing notes rather than
+ * copying them, the notes are only joined when {@link #getNotes()}
+ * is called.
  *
  * @see PastMeeting
  * @see spec.Meeting
@@ -19,7 +29,18 @@ import java.util.Set;
  */
 public class PastMeetingImpl extends MeetingImpl implements PastMeeting, Serializable {
 
-    private final String meetingNotes;
+    private static final long serialVersionUID = 1791829817298259598L;
+
+    /**
+     * The serialized form holds the notes as a string, as when they
+     * were held that way, so existing data files can still be read.
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("meetingNotes", String.class)
+    };
+
+    // not final so that it can be set when deserializing
+    private transient Notes meetingNotes;
 
     /**
      * @see MeetingImpl
@@ -31,15 +52,74 @@ public class PastMeetingImpl extends MeetingImpl implements PastMeeting, Seriali
      */
     public PastMeetingImpl(int id, Calendar date, Set<Contact> contacts, String notes) {
         super(id, date, contacts);
-        Objects.requireNonNull(notes);
+        meetingNotes = Notes.of(notes);
+    }
+
+    /**
+     * @see MeetingImpl#MeetingImpl(int, long, TimeZone, int[], IntFunction)
+     * @param notes The notes for the meeting
+     */
+    PastMeetingImpl(int id, long time, TimeZone zone, int[] contactIds, IntFunction<Contact> directory,
+                    String notes) {
+        this(id, time, zone, contactIds, directory, Notes.of(notes));
+    }
+
+    private PastMeetingImpl(int id, long time, TimeZone zone, int[] contactIds, IntFunction<Contact> directory,
+                            Notes notes) {
+        super(id, time, zone, contactIds, directory);
         meetingNotes = notes;
     }
 
+    /**
+     * Creates a past meeting without notes from a future meeting
+     * whose date has passed
+     *
+     * @param meeting The existing meeting
+     * @return a past meeting with the same ID, date and contacts
+     */
+    static PastMeetingImpl withoutNotes(Meeting meeting) {
+        return new PastMeetingImpl(meeting.getId(), MeetingImpl.timeOf(meeting), MeetingImpl.zoneOf(meeting),
+            MeetingImpl.contactIdsOf(meeting), MeetingImpl.directoryOf(meeting), Notes.NONE);
+    }
+
+    /**
+     * Creates a past meeting from an existing meeting, adding some
+     * notes after any notes the meeting already has.<br>
+     * Notes are separated by a new line. The existing notes are
+     * shared with the new meeting, not copied.
+     *
+     * @param meeting The existing past or future meeting
+     * @param text The notes to add
+     * @return a past meeting with the same ID, date and contacts
+     */
+    static PastMeetingImpl withNotes(Meeting meeting, String text) {
+        Objects.requireNonNull(text);
+        Notes notes = (meeting instanceof PastMeetingImpl)
+            ? ((PastMeetingImpl) meeting).meetingNotes
+            : (meeting instanceof PastMeeting) ? Notes.of(((PastMeeting) meeting).getNotes()) : Notes.NONE;
+        return new PastMeetingImpl(meeting.getId(), MeetingImpl.timeOf(meeting), MeetingImpl.zoneOf(meeting),
+            MeetingImpl.contactIdsOf(meeting), MeetingImpl.directoryOf(meeting), notes.appended(text));
+    }
+
     /**
      * @see PastMeeting#getNotes()
      */
     @Override
     public String getNotes() {
-        return meetingNotes;
+        return meetingNotes.toString();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("meetingNotes", getNotes());
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        String notes = (String) in.readFields().get("meetingNotes", null);
+        if (notes == null) {
+            throw new IOException("Invalid meeting");
+        }
+        meetingNotes = Notes.of(notes);
     }
 }
@@ -0,0 +1,233 @@
+package impl;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Statistics of a Contact Manager's persistence: the bytes and records
+ * its storage has read and written, how long loading, writing, syncing
+ * and flushing took, and how many of them failed.<br>
+ * Writing a snapshot encodes the records as they are written, so the
+ * write time covers both. Likewise the load time covers reading and
+ * decoding the data and building the CM's indexes.
+ * Times are in nanoseconds and timestamps in epoch milliseconds, 0 if
+ * there has been no such event. Instances are snapshots, they do not
+ * change as the CM carries on.
+ *
+ * @see ContactManagerImpl#getPersistenceStats()
+ *
+ * @author lmignot
+ */
+public final class PersistenceStats {
+
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long recordsWritten;
+    private final long writeNanos;
+    private final long syncs;
+    private final long syncNanos;
+    private final long writeFailures;
+    private final long loads;
+    private final long loadFailures;
+    private final long lastLoadNanos;
+    private final double lastLoadRecordsPerSecond;
+    private final long lastLoadMillis;
+    private final long flushes;
+    private final long flushFailures;
+    private final long lastFlushNanos;
+    private final long p50FlushNanos;
+    private final long p99FlushNanos;
+    private final long maxFlushNanos;
+    private final long lastFlushBytes;
+    private final double lastFlushRecordsPerSecond;
+    private final long lastFlushMillis;
+
+    @ConstructorProperties({ "bytesRead", "bytesWritten", "recordsWritten", "writeNanos",
+        "syncs", "syncNanos", "writeFailures",
+        "loads", "loadFailures", "lastLoadNanos", "lastLoadRecordsPerSecond", "lastLoadMillis",
+        "flushes", "flushFailures", "lastFlushNanos", "p50FlushNanos", "p99FlushNanos",
+        "maxFlushNanos", "lastFlushBytes", "lastFlushRecordsPerSecond", "lastFlushMillis" })
+    public PersistenceStats(long bytesRead, long bytesWritten, long recordsWritten, long writeNanos,
+                            long syncs, long syncNanos, long writeFailures,
+                            long loads, long loadFailures, long lastLoadNanos, double lastLoadRecordsPerSecond,
+                            long lastLoadMillis,
+                            long flushes, long flushFailures, long lastFlushNanos, long p50FlushNanos,
+                            long p99FlushNanos, long maxFlushNanos, long lastFlushBytes,
+                            double lastFlushRecordsPerSecond, long lastFlushMillis) {
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.recordsWritten = recordsWritten;
+        this.writeNanos = writeNanos;
+        this.syncs = syncs;
+        this.syncNanos = syncNanos;
+        this.writeFailures = writeFailures;
+        this.loads = loads;
+        this.loadFailures = loadFailures;
+        this.lastLoadNanos = lastLoadNanos;
+        this.lastLoadRecordsPerSecond = lastLoadRecordsPerSecond;
+        this.lastLoadMillis = lastLoadMillis;
+        this.flushes = flushes;
+        this.flushFailures = flushFailures;
+        this.lastFlushNanos = lastFlushNanos;
+        this.p50FlushNanos = p50FlushNanos;
+        this.p99FlushNanos = p99FlushNanos;
+        this.maxFlushNanos = maxFlushNanos;
+        this.lastFlushBytes = lastFlushBytes;
+        this.lastFlushRecordsPerSecond = lastFlushRecordsPerSecond;
+        this.lastFlushMillis = lastFlushMillis;
+    }
+
+    /**
+     * @return the number of bytes read from data files
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return the number of bytes written to data files
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return the number of contacts, meetings and journal records written
+     */
+    public long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    /**
+     * @return the total time spent encoding and writing data
+     */
+    public long getWriteNanos() {
+        return writeNanos;
+    }
+
+    /**
+     * @return the number of times a file was forced to disk
+     */
+    public long getSyncs() {
+        return syncs;
+    }
+
+    /**
+     * @return the total time spent forcing files to disk
+     */
+    public long getSyncNanos() {
+        return syncNanos;
+    }
+
+    /**
+     * @return the number of changes which the storage failed to record
+     */
+    public long getWriteFailures() {
+        return writeFailures;
+    }
+
+    /**
+     * @return the number of successful loads
+     */
+    public long getLoads() {
+        return loads;
+    }
+
+    /**
+     * @return the number of loads which failed, after which the CM started empty
+     */
+    public long getLoadFailures() {
+        return loadFailures;
+    }
+
+    /**
+     * @return how long the last successful load took
+     */
+    public long getLastLoadNanos() {
+        return lastLoadNanos;
+    }
+
+    /**
+     * @return the contacts and meetings loaded per second by the last successful load
+     */
+    public double getLastLoadRecordsPerSecond() {
+        return lastLoadRecordsPerSecond;
+    }
+
+    /**
+     * @return when the last successful load finished
+     */
+    public long getLastLoadMillis() {
+        return lastLoadMillis;
+    }
+
+    /**
+     * @return the number of successful flushes
+     */
+    public long getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * @return the number of flushes which failed
+     */
+    public long getFlushFailures() {
+        return flushFailures;
+    }
+
+    /**
+     * @return how long the last successful flush took
+     */
+    public long getLastFlushNanos() {
+        return lastFlushNanos;
+    }
+
+    /**
+     * @return the median time a flush took, including failed flushes
+     */
+    public long getP50FlushNanos() {
+        return p50FlushNanos;
+    }
+
+    /**
+     * @return the 99th percentile time a flush took, including failed flushes
+     */
+    public long getP99FlushNanos() {
+        return p99FlushNanos;
+    }
+
+    /**
+     * @return the longest time a flush took, including failed flushes
+     */
+    public long getMaxFlushNanos() {
+        return maxFlushNanos;
+    }
+
+    /**
+     * @return the number of bytes written by the last successful flush
+     */
+    public long getLastFlushBytes() {
+        return lastFlushBytes;
+    }
+
+    /**
+     * @return the records written per second by the last successful flush
+     */
+    public double getLastFlushRecordsPerSecond() {
+        return lastFlushRecordsPerSecond;
+    }
+
+    /**
+     * @return when the last successful flush finished
+     */
+    public long getLastFlushMillis() {
+        return lastFlushMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("flushes=%d (%d failed) lastFlush=%dns/%dB p99Flush=%dns loads=%d (%d failed) "
+                + "lastLoad=%dns read=%dB written=%dB/%d records sync=%dns/%d writeFailures=%d",
+            flushes, flushFailures, lastFlushNanos, lastFlushBytes, p99FlushNanos, loads, loadFailures,
+            lastLoadNanos, bytesRead, bytesWritten, recordsWritten, syncNanos, syncs, writeFailures);
+    }
+}
@@ -0,0 +1,87 @@
+package impl;
+
+import spec.Contact;
+import spec.Meeting;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * A point-in-time copy of the data held by a Contact Manager,
+ * as written to and read from the data file.
+ *
+ * @see SnapshotCodec
+ *
+ * @author lmignot
+ */
+final class Snapshot {
+
+    static final Snapshot EMPTY = new Snapshot(Collections.emptyList(), Collections.emptyList(), 1, 1);
+
+    private static final long NO_JOURNAL = 0L;
+
+    private final Collection<Contact> contacts;
+    private final Collection<Meeting> meetings;
+    private final int nextContactId;
+    private final int nextMeetingId;
+    private final long journalSequence;
+
+    /**
+     * @param contacts All contacts
+     * @param meetings All meetings, in ascending ID order
+     * @param nextContactId The ID to give the next new contact
+     * @param nextMeetingId The ID to give the next new meeting
+     */
+    Snapshot(Collection<Contact> contacts, Collection<Meeting> meetings, int nextContactId, int nextMeetingId) {
+        this(contacts, meetings, nextContactId, nextMeetingId, NO_JOURNAL);
+    }
+
+    /**
+     * @see Snapshot#Snapshot(Collection, Collection, int, int)
+     * @param journalSequence The sequence number of the last journal
+     *                        record included in this snapshot
+     */
+    Snapshot(Collection<Contact> contacts, Collection<Meeting> meetings, int nextContactId, int nextMeetingId,
+             long journalSequence) {
+        this.contacts = contacts;
+        this.meetings = meetings;
+        this.nextContactId = nextContactId;
+        this.nextMeetingId = nextMeetingId;
+        this.journalSequence = journalSequence;
+    }
+
+    /**
+     * @param sequence The sequence number of the last journal record included
+     * @return a copy of this snapshot with the given journal sequence number
+     */
+    Snapshot withJournalSequence(long sequence) {
+        return new Snapshot(contacts, meetings, nextContactId, nextMeetingId, sequence);
+    }
+
+    Collection<Contact> getContacts() {
+        return contacts;
+    }
+
+    Collection<Meeting> getMeetings() {
+        return meetings;
+    }
+
+    /**
+     * @return the number of contacts and meetings
+     */
+    long size() {
+        return (long) contacts.size() + meetings.size();
+    }
+
+    int getNextContactId() {
+        return nextContactId;
+    }
+
+    int getNextMeetingId() {
+        return nextMeetingId;
+    }
+
+    long getJournalSequence() {
+        return journalSequence;
+    }
+}
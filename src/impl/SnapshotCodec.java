@@ -0,0 +1,324 @@
+package impl;
+
+import spec.Contact;
+import spec.Meeting;
+import spec.PastMeeting;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.function.IntFunction;
+
+/**
+ * Reads and writes Contact Manager snapshots in a compact,
+ * versioned binary format.
+ *
+ * <h3>Format (version 3)</h3>
+ * All numbers are big-endian, strings are an int byte length
+ * followed by that many bytes of UTF-8.
+ * <pre>
+ * int     magic ("CMSN")
+ * int     version
+ * int     next contact ID
+ * int     next meeting ID
+ * long    sequence number of the last journal record included (version 2+)
+ * int     number of time zones, followed by each time zone ID (string)
+ * int     number of contacts, followed by each contact:
+ *           int id, string name, int number of notes, string each note
+ *           (before version 3, a single string of all the notes)
+ * int     number of meetings, followed by each meeting:
+ *           byte kind (0 = future, 1 = past), int id, long date (epoch millis),
+ *           int time zone index, int number of contacts, int[] contact IDs,
+ *           string notes (past meetings only)
+ * </pre>
+ * Data files written by earlier versions with Java serialization are
+ * still read, they are migrated to this format by the next flush.
+ *
+ * @author lmignot
+ */
+final class SnapshotCodec {
+
+    static final int MAGIC = 0x434D534E;
+    static final int VERSION = 3;
+
+    private static final int FIRST_VERSION = 1;
+
+    private static final int JAVA_SERIALIZATION_MAGIC = 0xACED;
+    private static final byte FUTURE_MEETING = 0;
+    private static final byte PAST_MEETING = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private SnapshotCodec() { }
+
+    /**
+     * Writes a snapshot to a stream, the stream is flushed but not closed.
+     *
+     * @param snapshot The snapshot to write
+     * @param os The stream to write to
+     * @throws IOException if the snapshot can not be written
+     */
+    static void write(Snapshot snapshot, OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, BUFFER_SIZE));
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(snapshot.getNextContactId());
+        out.writeInt(snapshot.getNextMeetingId());
+        out.writeLong(snapshot.getJournalSequence());
+
+        Map<String, Integer> zones = new LinkedHashMap<>();
+        for (Meeting m : snapshot.getMeetings()) {
+            zones.putIfAbsent(MeetingImpl.zoneOf(m).getID(), zones.size());
+        }
+        out.writeInt(zones.size());
+        for (String zone : zones.keySet()) {
+            writeString(out, zone);
+        }
+
+        out.writeInt(snapshot.getContacts().size());
+        for (Contact c : snapshot.getContacts()) {
+            out.writeInt(c.getId());
+            writeString(out, c.getName());
+            List<String> notes = ContactImpl.notesOf(c);
+            out.writeInt(notes.size());
+            for (String note : notes) {
+                writeString(out, note);
+            }
+        }
+
+        out.writeInt(snapshot.getMeetings().size());
+        for (Meeting m : snapshot.getMeetings()) {
+            boolean past = m instanceof PastMeeting;
+            out.writeByte(past ? PAST_MEETING : FUTURE_MEETING);
+            out.writeInt(m.getId());
+            out.writeLong(MeetingImpl.timeOf(m));
+            out.writeInt(zones.get(MeetingImpl.zoneOf(m).getID()));
+            int[] contactIds = MeetingImpl.contactIdsOf(m);
+            out.writeInt(contactIds.length);
+            for (int id : contactIds) {
+                out.writeInt(id);
+            }
+            if (past) {
+                writeString(out, ((PastMeeting) m).getNotes());
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads a snapshot from a stream.<br>
+     * Both the binary format and the Java serialization format used by
+     * earlier versions are supported, the format is detected from the
+     * first bytes of the stream.
+     *
+     * @param is The stream to read from
+     * @param directory Looks up the contacts of the meetings read, Java
+     *                  serialized meetings keep the contacts read with them
+     * @return the snapshot
+     * @throws IOException if the stream can not be read or is not a valid snapshot
+     */
+    static Snapshot read(InputStream is, IntFunction<Contact> directory) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(is, BUFFER_SIZE);
+        buffered.mark(2);
+        int header = (buffered.read() << 8) | buffered.read();
+        buffered.reset();
+
+        if (header == JAVA_SERIALIZATION_MAGIC) {
+            return readLegacy(buffered);
+        }
+        return readBinary(new DataInputStream(buffered), directory);
+    }
+
+    private static Snapshot readBinary(DataInputStream in, IntFunction<Contact> directory) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a contact manager data file");
+        }
+        int version = in.readInt();
+        if (version < FIRST_VERSION || version > VERSION) {
+            throw new IOException("Unsupported data file version " + version);
+        }
+        int nextContactId = in.readInt();
+        int nextMeetingId = in.readInt();
+        if (nextContactId <= 0 || nextMeetingId <= 0) {
+            throw new IOException("Invalid next ID " + Math.min(nextContactId, nextMeetingId));
+        }
+        long journalSequence = (version >= 2) ? in.readLong() : 0L;
+        byte[] buffer = new byte[64];
+
+        // not sized up front by the counts read, so that a corrupt count ends the stream rather than the heap
+        int zoneCount = readCount(in, "time zone");
+        List<TimeZone> zones = new ArrayList<>();
+        for (int i = 0; i < zoneCount; i++) {
+            zones.add(TimeZone.getTimeZone(readString(in, buffer)));
+        }
+
+        int contactCount = readCount(in, "contact");
+        IdIndex<Contact> contacts = new IdIndex<>();
+        for (int i = 0; i < contactCount; i++) {
+            int id = in.readInt();
+            String name = readString(in, buffer);
+            if (id >= nextContactId) {
+                throw new IOException("Contact " + id + " is not before the next contact ID");
+            }
+            ContactImpl contact;
+            try {
+                contact = new ContactImpl(id, name);
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Invalid contact " + id, ex);
+            }
+            int noteCount = (version >= 3) ? readCount(in, "note") : 1;
+            for (int j = 0; j < noteCount; j++) {
+                String note = readString(in, buffer);
+                if (!note.isEmpty()) {
+                    contact.appendNote(note);
+                } else if (version >= 3) {
+                    throw new IOException("Contact " + id + " has an empty note");
+                }
+            }
+            contacts.put(id, contact);
+        }
+
+        int meetingCount = readCount(in, "meeting");
+        List<Meeting> meetings = new ArrayList<>();
+        for (int i = 0; i < meetingCount; i++) {
+            byte kind = in.readByte();
+            int id = in.readInt();
+            long millis = in.readLong();
+            if (kind != FUTURE_MEETING && kind != PAST_MEETING) {
+                throw new IOException("Invalid kind " + kind + " of meeting " + id);
+            }
+            if (id >= nextMeetingId) {
+                throw new IOException("Meeting " + id + " is not before the next meeting ID");
+            }
+            int zoneIndex = in.readInt();
+            if (zoneIndex < 0 || zoneIndex >= zones.size()) {
+                throw new IOException("Invalid time zone index " + zoneIndex);
+            }
+            TimeZone zone = zones.get(zoneIndex);
+            int attendees = readCount(in, "attendee");
+            if (attendees > contacts.size()) {
+                throw new IOException("Meeting " + id + " has more contacts than there are");
+            }
+            int[] contactIds = new int[attendees];
+            for (int j = 0; j < contactIds.length; j++) {
+                contactIds[j] = in.readInt();
+                if (contacts.get(contactIds[j]) == null) {
+                    throw new IOException("Meeting " + id + " refers to unknown contact " + contactIds[j]);
+                }
+            }
+            contactIds = sortContactIds(id, contactIds);
+            try {
+                meetings.add(kind == PAST_MEETING
+                    ? new PastMeetingImpl(id, millis, zone, contactIds, directory, readString(in, buffer))
+                    : new FutureMeetingImpl(id, millis, zone, contactIds, directory));
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Invalid meeting " + id, ex);
+            }
+        }
+
+        List<Contact> contactList = new ArrayList<>(contacts.size());
+        contacts.forEach(contactList::add);
+        return new Snapshot(contactList, meetings, nextContactId, nextMeetingId, journalSequence);
+    }
+
+    /**
+     * Reads a data file written with Java serialization by earlier
+     * versions of the Contact Manager.
+     */
+    @SuppressWarnings("unchecked")
+    private static Snapshot readLegacy(InputStream is) throws IOException {
+        try {
+            ObjectInputStream in = new ObjectInputStream(is);
+            Collection<Contact> contacts = (Set<Contact>) in.readObject();
+            Collection<Meeting> meetings = (List<Meeting>) in.readObject();
+            int nextMeetingId = (int) in.readObject();
+            int nextContactId = (int) in.readObject();
+            return new Snapshot(contacts, meetings, nextContactId, nextMeetingId);
+        } catch (ClassNotFoundException | ClassCastException ex) {
+            throw new IOException("Invalid legacy data file", ex);
+        }
+    }
+
+    /**
+     * Sorts a meeting's contact IDs as read from a data file
+     *
+     * @param meetingId The meeting's ID, for the error message
+     * @param contactIds The contact IDs
+     * @return the IDs in ascending order
+     * @throws IOException if the meeting has no contacts or lists one twice
+     */
+    static int[] sortContactIds(int meetingId, int[] contactIds) throws IOException {
+        if (contactIds.length == 0) {
+            throw new IOException("Meeting " + meetingId + " has no contacts");
+        }
+        try {
+            return AttendeeSet.sorted(contactIds);
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Meeting " + meetingId + " lists a contact more than once", ex);
+        }
+    }
+
+    /**
+     * Reads the number of items which follow
+     *
+     * @param what What is counted, for the error message
+     * @throws IOException if the count is negative
+     */
+    static int readCount(DataInputStream in, String what) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid " + what + " count " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Writes a length-prefixed UTF-8 string
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a length-prefixed UTF-8 string
+     *
+     * @param buffer A scratch buffer, only used if it is large enough
+     */
+    static String readString(DataInputStream in, byte[] buffer) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid string length " + length);
+        }
+        if (length <= buffer.length) {
+            in.readFully(buffer, 0, length);
+            return new String(buffer, 0, length, StandardCharsets.UTF_8);
+        }
+        // grown as the bytes are read, so that a corrupt length ends the stream rather than the heap
+        byte[] bytes = new byte[Math.min(length, BUFFER_SIZE)];
+        int read = 0;
+        while (true) {
+            in.readFully(bytes, read, bytes.length - read);
+            read = bytes.length;
+            if (read == length) {
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            bytes = Arrays.copyOf(bytes, (int) Math.min(length, 2L * read));
+        }
+    }
+}
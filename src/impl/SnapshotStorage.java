@@ -0,0 +1,82 @@
+package impl;
+
+import spec.Contact;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Stores all of a Contact Manager's data in a single snapshot file,
+ * which is rewritten in full on every flush.<br>
+ * This is the default storage of a CM.
+ * <br>
+ * The file is replaced atomically, and the previous generation is
+ * kept as a backup which is read if the snapshot file can not be.
+ *
+ * @see SnapshotCodec
+ * @see AtomicFile
+ *
+ * @author lmignot
+ */
+public final class SnapshotStorage extends Storage {
+
+    private final AtomicFile file;
+
+    /**
+     * @param path The snapshot file
+     * @throws NullPointerException if the path is null
+     */
+    public SnapshotStorage(Path path) {
+        file = new AtomicFile(path, metrics());
+    }
+
+    /**
+     * @param path The snapshot file
+     * @param metrics Where the snapshot file's I/O is recorded
+     */
+    SnapshotStorage(Path path, StorageMetrics metrics) {
+        super(metrics);
+        file = new AtomicFile(path, metrics);
+    }
+
+    @Override
+    Snapshot load(IntFunction<Contact> directory) throws IOException {
+        if (!file.exists()) {
+            return Snapshot.EMPTY;
+        }
+        return file.read(path -> read(path, directory));
+    }
+
+    private static Snapshot read(Path path, IntFunction<Contact> directory) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return SnapshotCodec.read(in, directory);
+        }
+    }
+
+    @Override
+    Flush prepareFlush(Supplier<Snapshot> snapshot) {
+        Snapshot s = snapshot.get();
+        return () -> write(s);
+    }
+
+    @Override
+    long snapshotSize() throws IOException {
+        return file.size();
+    }
+
+    /**
+     * Atomically replaces the snapshot file with a new snapshot
+     *
+     * @param snapshot The snapshot to write
+     * @throws IOException if the snapshot can not be written, in which
+     *                     case the snapshot file is unchanged
+     */
+    void write(Snapshot snapshot) throws IOException {
+        file.write(ch -> SnapshotCodec.write(snapshot, Channels.newOutputStream(ch)), snapshot.size());
+    }
+}
@@ -0,0 +1,166 @@
+package impl;
+
+import spec.Contact;
+import spec.Meeting;
+
+import java.io.IOException;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Where and how a Contact Manager persists its data.<br>
+ * A CM loads its data from its storage when it is created and hands
+ * it every change as it happens, so that storage strategies which
+ * record individual changes (such as a journal) don't need to rewrite
+ * all of the data on each flush.
+ * <br>
+ * Storage strategies are provided by this package, the constructor
+ * is package-private so the class can't be extended elsewhere.
+ *
+ * @see SnapshotStorage
+ * @see JournalStorage
+ * @see MappedStorage
+ *
+ * @author lmignot
+ */
+public abstract class Storage {
+
+    private final StorageMetrics metrics;
+
+    Storage() {
+        this(new StorageMetrics());
+    }
+
+    /**
+     * @param metrics Where the storage's I/O is recorded, shared with
+     *                any storage this storage is built on
+     */
+    Storage(StorageMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return where the storage's I/O, loads and flushes are recorded
+     */
+    StorageMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Reads all persisted data
+     *
+     * @param directory Looks up the CM's contacts by ID, the meetings
+     *                  read use it for their contacts rather than a
+     *                  directory of their own. Only called once the CM
+     *                  holds the contacts read
+     * @return the persisted data, or an empty snapshot if there is none
+     * @throws IOException if the data exists but can not be read
+     */
+    abstract Snapshot load(IntFunction<Contact> directory) throws IOException;
+
+    /**
+     * Takes what a flush of all changes so far needs to write, so that
+     * it can be written without holding the CM's lock while the CM
+     * carries on changing.<br>
+     * Called while holding the CM's write lock. The flushes returned
+     * are written one at a time, in the order they were prepared.
+     *
+     * @param snapshot Supplies a snapshot of the CM's current data,
+     *                 only called if the storage needs one
+     * @return the flush, which makes the changes durable when written
+     * @throws IOException if the flush can not be prepared
+     */
+    abstract Flush prepareFlush(Supplier<Snapshot> snapshot) throws IOException;
+
+    /**
+     * Prepares the storage to read contacts and meetings one at a time,
+     * so that a CM can answer lookups by ID without loading all of its data.
+     *
+     * @return true if {@link #loadContact(int)} and {@link #loadMeeting(int)}
+     *         are supported, false if the CM must {@link #load(IntFunction)} its data
+     * @throws IOException if the data exists but can not be read
+     */
+    boolean openLazily() throws IOException {
+        return false;
+    }
+
+    /**
+     * Reads a single contact, only supported after {@link #openLazily()}
+     * has returned true and until {@link #load(IntFunction)} is called.
+     * The same Contact is returned for an ID every time, including by {@link #load(IntFunction)}.
+     *
+     * @param id The contact's ID
+     * @return the contact, or null if there is none with that ID
+     * @throws IOException if the contact can not be read
+     */
+    Contact loadContact(int id) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Reads a single meeting, only supported after {@link #openLazily()}
+     * has returned true and until {@link #load(IntFunction)} is called.
+     *
+     * @param id The meeting's ID
+     * @return the meeting, or null if there is none with that ID
+     * @throws IOException if the meeting can not be read
+     */
+    Meeting loadMeeting(int id) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return the size in bytes of the persisted snapshot of the data,
+     *         or -1 if there is none or the storage does not keep one
+     * @throws IOException if the size can not be read
+     */
+    long snapshotSize() throws IOException {
+        return -1;
+    }
+
+    /**
+     * Called after a contact has been added
+     *
+     * @param contact The new contact
+     * @throws IOException if the change can not be recorded
+     */
+    void contactAdded(Contact contact) throws IOException { }
+
+    /**
+     * Called after notes have been added to an existing contact
+     *
+     * @param contact The contact
+     * @param note The note that was added
+     * @throws IOException if the change can not be recorded
+     */
+    void contactNotesAdded(Contact contact, String note) throws IOException { }
+
+    /**
+     * Called after a past or future meeting has been added
+     *
+     * @param meeting The new meeting
+     * @throws IOException if the change can not be recorded
+     */
+    void meetingAdded(Meeting meeting) throws IOException { }
+
+    /**
+     * Called after notes have been added to a meeting
+     *
+     * @param id The meeting's ID
+     * @param text The notes that were added
+     * @throws IOException if the change can not be recorded
+     */
+    void meetingNotesAdded(int id, String text) throws IOException { }
+
+    /**
+     * The writing of a flush prepared by {@link #prepareFlush(Supplier)}
+     */
+    interface Flush {
+        /**
+         * Makes the changes taken by the flush durable
+         *
+         * @throws IOException if the data can not be written
+         */
+        void write() throws IOException;
+    }
+}
@@ -0,0 +1,147 @@
+package impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the I/O of a storage and the loads and flushes a Contact
+ * Manager makes with it.<br>
+ * The storage reports the bytes and records it reads and writes and
+ * how long writing and syncing take, the CM reports when loads and
+ * flushes start and whether they succeed. Loads are made under the
+ * CM's write lock and flushes one at a time by its {@link Flusher},
+ * writes may be made by either or by a thread changing the CM, while
+ * the statistics can be read at any time.
+ *
+ * @see PersistenceStats
+ *
+ * @author lmignot
+ */
+final class StorageMetrics {
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong recordsWritten = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    private final AtomicLong syncNanos = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private volatile long lastLoadNanos;
+    private volatile long lastLoadRecords;
+    private volatile long lastLoadMillis;
+
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+    private final LatencyHistogram flushLatency = new LatencyHistogram();
+    private volatile long lastFlushNanos;
+    private volatile long lastFlushRecords;
+    private volatile long lastFlushBytes;
+    private volatile long lastFlushMillis;
+
+    // where the current flush started, only used by the thread flushing
+    private long flushStart;
+    private long flushRecordsBefore;
+    private long flushBytesBefore;
+
+    /**
+     * @param bytes The number of bytes read from a file
+     */
+    void read(long bytes) {
+        bytesRead.addAndGet(bytes);
+    }
+
+    /**
+     * @param bytes The number of bytes written to a file
+     * @param records The number of contacts, meetings or changes written
+     * @param nanos How long encoding and writing them took
+     */
+    void written(long bytes, long records, long nanos) {
+        bytesWritten.addAndGet(bytes);
+        recordsWritten.addAndGet(records);
+        writeNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @param nanos How long forcing a file to disk took
+     */
+    void synced(long nanos) {
+        syncs.incrementAndGet();
+        syncNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Counts a change which could not be recorded by the storage
+     */
+    void writeFailed() {
+        writeFailures.incrementAndGet();
+    }
+
+    /**
+     * @param records The number of contacts and meetings loaded
+     * @param startNanos When the load started, from {@link System#nanoTime()}
+     */
+    void loaded(long records, long startNanos) {
+        lastLoadNanos = System.nanoTime() - startNanos;
+        lastLoadRecords = records;
+        lastLoadMillis = System.currentTimeMillis();
+        loads.incrementAndGet();
+    }
+
+    /**
+     * Counts a load which failed
+     */
+    void loadFailed() {
+        loadFailures.incrementAndGet();
+    }
+
+    /**
+     * Marks the start of a flush
+     */
+    void flushStarted() {
+        flushStart = System.nanoTime();
+        flushRecordsBefore = recordsWritten.get();
+        flushBytesBefore = bytesWritten.get();
+    }
+
+    /**
+     * Marks the end of a flush which succeeded
+     */
+    void flushed() {
+        long nanos = System.nanoTime() - flushStart;
+        flushLatency.record(nanos);
+        lastFlushNanos = nanos;
+        lastFlushRecords = recordsWritten.get() - flushRecordsBefore;
+        lastFlushBytes = bytesWritten.get() - flushBytesBefore;
+        lastFlushMillis = System.currentTimeMillis();
+        flushes.incrementAndGet();
+    }
+
+    /**
+     * Marks the end of a flush which failed
+     */
+    void flushFailed() {
+        flushLatency.record(System.nanoTime() - flushStart);
+        flushFailures.incrementAndGet();
+    }
+
+    /**
+     * @return the statistics so far
+     */
+    PersistenceStats stats() {
+        long[] flushPercentiles = flushLatency.percentiles(50, 99);
+        return new PersistenceStats(
+            bytesRead.get(), bytesWritten.get(), recordsWritten.get(), writeNanos.get(),
+            syncs.get(), syncNanos.get(), writeFailures.get(),
+            loads.get(), loadFailures.get(), lastLoadNanos, perSecond(lastLoadRecords, lastLoadNanos), lastLoadMillis,
+            flushes.get(), flushFailures.get(), lastFlushNanos, flushPercentiles[0], flushPercentiles[1],
+            flushLatency.max(), lastFlushBytes, perSecond(lastFlushRecords, lastFlushNanos), lastFlushMillis);
+    }
+
+    private static double perSecond(long records, long nanos) {
+        return (nanos == 0) ? 0 : records * NANOS_PER_SECOND / nanos;
+    }
+}
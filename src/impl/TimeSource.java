@@ -0,0 +1,26 @@
+package impl;
+
+/**
+ * Where a Contact Manager gets the current time from, to decide
+ * whether a meeting is in the past or the future.<br>
+ * Times are epoch milliseconds, so reading the time doesn't create a
+ * Calendar and look up the default time zone and locale.
+ *
+ * @see CoarseTimeSource
+ * @see FakeTimeSource
+ *
+ * @author lmignot
+ */
+@FunctionalInterface
+public interface TimeSource {
+
+    /**
+     * The system clock, which the CM uses by default
+     */
+    TimeSource SYSTEM = System::currentTimeMillis;
+
+    /**
+     * @return the current time in epoch milliseconds
+     */
+    long currentTimeMillis();
+}
@@ -0,0 +1,210 @@
+package test;
+
+import impl.ContactManagerImpl;
+import impl.GroupCommit;
+import impl.JournalStorage;
+import impl.TimeSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import spec.Contact;
+import spec.ContactManager;
+import spec.Meeting;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static test.TestCommon.*;
+
+/**
+ * ContactManager tests
+ *
+ * This class stress tests a ContactManager shared between threads
+ *
+ * @author lmignot
+ */
+public class ContactManagerConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int OPS_PER_THREAD = 2_000;
+    private static final int MEETINGS_PER_THREAD = 250;
+    private static final int TIMEOUT_SECONDS = 60;
+
+    private ContactManager cm;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        deleteDataFile();
+        deleteJournalFile();
+        cm = new ContactManagerImpl();
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        deleteDataFile();
+        deleteJournalFile();
+    }
+
+    /**
+     * Runs a task on every thread at once and waits for all of them
+     *
+     * @return the result of each task
+     */
+    private <T> List<T> runOnAllThreads(Callable<T> task) throws Exception {
+        List<Callable<T>> tasks = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            tasks.add(task);
+        }
+        List<T> results = new ArrayList<>();
+        for (Future<T> f : executor.invokeAll(tasks, TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            results.add(f.get());
+        }
+        return results;
+    }
+
+    @Test
+    public void testConcurrentlyAddedContactsShouldHaveUniqueIds() throws Exception {
+        List<Set<Integer>> ids = runOnAllThreads(() -> {
+            Set<Integer> added = new HashSet<>();
+            for (int i = 0; i < OPS_PER_THREAD; i++) {
+                added.add(cm.addNewContact(CONTACT_1_NAME, CONTACT_1_NOTES));
+            }
+            return added;
+        });
+
+        Set<Integer> all = new HashSet<>();
+        ids.forEach(all::addAll);
+        assertEquals(all.size(), THREADS * OPS_PER_THREAD);
+        assertEquals(cm.getContacts(EMPTY_STRING).size(), THREADS * OPS_PER_THREAD);
+        assertTrue(cm.addNewContact(CONTACT_2_NAME, CONTACT_2_NOTES) > Collections.max(all));
+    }
+
+    @Test
+    public void testIdsShouldContinueFromHighestIdAfterReload() throws Exception {
+        List<Integer> highest = runOnAllThreads(() -> {
+            int max = 0;
+            for (int i = 0; i < OPS_PER_THREAD; i++) {
+                max = Math.max(max, cm.addNewContact(CONTACT_1_NAME, CONTACT_1_NOTES));
+            }
+            return max;
+        });
+        cm.flush();
+
+        ContactManager cm2 = new ContactManagerImpl();
+        assertEquals(cm2.getContacts(EMPTY_STRING).size(), THREADS * OPS_PER_THREAD);
+        assertEquals(cm2.addNewContact(CONTACT_2_NAME, CONTACT_2_NOTES), Collections.max(highest) + 1);
+        assertEquals(cm2.addNewContact(CONTACT_3_NAME, CONTACT_3_NOTES), Collections.max(highest) + 2);
+    }
+
+    @Test
+    public void testQueriesShouldSeeConsistentDataWhileMeetingsAreAdded() throws Exception {
+        addTestContacts(cm);
+        Set<Contact> contacts = cm.getContacts(CONTACT_1_ID, CONTACT_2_ID);
+        Contact contact = cm.getContacts(CONTACT_1_ID).iterator().next();
+
+        List<Set<Integer>> ids = runOnAllThreads(() -> {
+            Set<Integer> added = new HashSet<>();
+            for (int i = 0; i < MEETINGS_PER_THREAD; i++) {
+                Calendar date = nextYear();
+                date.add(Calendar.MINUTE, i);
+                int id = cm.addFutureMeeting(contacts, date);
+                added.add(id);
+                Meeting mtg = cm.getMeeting(id);
+                assertNotNull(mtg);
+                assertEquals(mtg.getId(), id);
+                assertTrue(cm.getMeetingListOn(date).contains(mtg));
+                List<Meeting> list = cm.getFutureMeetingList(contact);
+                for (int j = 1; j < list.size(); j++) {
+                    assertFalse(list.get(j).getDate().before(list.get(j - 1).getDate()));
+                }
+            }
+            return added;
+        });
+
+        Set<Integer> all = new HashSet<>();
+        ids.forEach(all::addAll);
+        assertEquals(all.size(), THREADS * MEETINGS_PER_THREAD);
+        for (int id : all) {
+            assertNotNull(cm.getFutureMeeting(id));
+        }
+        // meetings at the same time with the same contacts are equal, so the list may hold fewer
+        assertTrue(cm.getFutureMeetingList(contact).size() <= THREADS * MEETINGS_PER_THREAD);
+    }
+
+    @Test
+    public void testConcurrentNotesAndFlushShouldNotLoseNotes() throws Exception {
+        addTestContacts(cm);
+        Contact contact = cm.getContacts(CONTACT_3_ID).iterator().next();
+
+        runOnAllThreads(() -> {
+            for (int i = 0; i < OPS_PER_THREAD / 10; i++) {
+                contact.addNotes(MEETING_NOTES);
+                cm.flush();
+            }
+            return null;
+        });
+
+        String notes = new ContactManagerImpl().getContacts(CONTACT_3_ID).iterator().next().getNotes();
+        assertEquals(notes.split(NOTES_DELIMITER).length, THREADS * (OPS_PER_THREAD / 10) + 1);
+    }
+
+    @Test
+    public void testAsyncFlushesShouldBeCoalescedAndPersistEveryChange() throws Exception {
+        ContactManagerImpl impl = (ContactManagerImpl) cm;
+        addTestContacts(cm);
+        int requests = THREADS * (OPS_PER_THREAD / 10);
+
+        List<List<CompletableFuture<Void>>> flushes = runOnAllThreads(() -> {
+            List<CompletableFuture<Void>> requested = new ArrayList<>();
+            for (int i = 0; i < OPS_PER_THREAD / 10; i++) {
+                cm.addNewContact(CONTACT_1_NAME, CONTACT_1_NOTES);
+                requested.add(impl.flushAsync());
+            }
+            return requested;
+        });
+        for (List<CompletableFuture<Void>> requested : flushes) {
+            for (CompletableFuture<Void> f : requested) {
+                f.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+        }
+
+        assertTrue(impl.getPersistenceStats().getFlushes() < requests);
+        assertEquals(new ContactManagerImpl().getContacts(EMPTY_STRING).size(), NUM_CONTACTS_DEFAULT + requests);
+    }
+
+    @Test
+    public void testGroupCommitShouldBatchChangesFromManyThreads() throws Exception {
+        Path dataFile = FileSystems.getDefault().getPath(FILENAME);
+        Path journalFile = FileSystems.getDefault().getPath(JOURNAL_FILENAME);
+        ContactManagerImpl durable = new ContactManagerImpl(new JournalStorage(dataFile, journalFile),
+            TimeSource.SYSTEM, new GroupCommit(2, TimeUnit.MILLISECONDS, THREADS));
+        int changes = THREADS * (OPS_PER_THREAD / 10);
+
+        runOnAllThreads(() -> {
+            for (int i = 0; i < OPS_PER_THREAD / 10; i++) {
+                durable.addNewContact(CONTACT_1_NAME, CONTACT_1_NOTES);
+            }
+            return null;
+        });
+
+        assertTrue(durable.getPersistenceStats().getSyncs() < changes);
+        ContactManager reloaded = new ContactManagerImpl(new JournalStorage(dataFile, journalFile));
+        assertEquals(reloaded.getContacts(EMPTY_STRING).size(), changes);
+    }
+}
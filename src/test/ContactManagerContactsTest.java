@@ -1,12 +1,14 @@
 package test;
 
 import impl.ContactManagerImpl;
+import impl.ContactSpec;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import spec.Contact;
 import spec.ContactManager;
 
+import java.util.Arrays;
 import java.util.Set;
 
 import static org.junit.Assert.*;
@@ -107,6 +109,28 @@ public class ContactManagerContactsTest {
         assertTrue(testContacts.isEmpty());
     }
 
+    @Test
+    public void testGetContactsByPartOfName() {
+        addTestContacts(cleanCM);
+
+        // "Peter Quill" and "Peter Parker"
+        assertEquals(cleanCM.getContacts("eter").size(), TWO);
+        assertEquals(cleanCM.getContacts("r P").size(), ONE);
+        assertEquals(cleanCM.getContacts("Pe").size(), TWO);
+        assertEquals(cleanCM.getContacts("u").size(), THREE);
+        assertTrue(cleanCM.getContacts("Petr").isEmpty());
+    }
+
+    @Test
+    public void testGetContactsByNameShouldSeeNewContacts() {
+        addTestContacts(cleanCM);
+        assertEquals(cleanCM.getContacts(CONTACT_6_NAME).size(), ONE);
+
+        cleanCM.addNewContact(CONTACT_3_NAME_EXTENDED, CONTACT_3_NOTES);
+        assertEquals(cleanCM.getContacts("Metahuman").size(), ONE);
+        assertEquals(cleanCM.getContacts(CONTACT_3_NAME).size(), TWO);
+    }
+
     @Test
     public void testGetContactsByIds() {
         Set<Contact> testContacts = contactsCM.getContacts(
@@ -143,6 +167,14 @@ public class ContactManagerContactsTest {
         assertEquals(testContacts.size(), NUM_CONTACTS_DEFAULT);
     }
 
+    @Test
+    public void testGetContactsByIdsIgnoresUnknownIds() {
+        Set<Contact> testContacts = contactsCM.getContacts(ID_NEG, ZERO, CONTACT_2_ID, ILLEGAL_ID_4);
+
+        assertEquals(testContacts.size(), ONE);
+        assertEquals(testContacts.iterator().next().getId(), CONTACT_2_ID);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testGetContactsByIdsWithInvalidIds() {
         contactsCM.getContacts(
@@ -203,4 +235,36 @@ public class ContactManagerContactsTest {
         cleanCM.addNewContact(EMPTY_STRING, EMPTY_STRING);
     }
 
+    /* =================== BATCHES =================== */
+
+    @Test
+    public void testAddBatchOfContacts() {
+        ContactManagerImpl cm = new ContactManagerImpl();
+        cm.addNewContact(CONTACT_1_NAME, CONTACT_1_NOTES);
+        int[] ids = cm.addNewContacts(Arrays.asList(
+            new ContactSpec(CONTACT_2_NAME, CONTACT_2_NOTES),
+            new ContactSpec(CONTACT_3_NAME, CONTACT_3_NOTES)
+        ));
+
+        assertArrayEquals(ids, new int[] {CONTACT_2_ID, CONTACT_3_ID});
+        assertEquals(cm.getContacts(CONTACT_3_ID).iterator().next().getName(), CONTACT_3_NAME);
+        assertEquals(cm.addNewContact(CONTACT_4_NAME, CONTACT_4_NOTES), CONTACT_4_ID);
+    }
+
+    @Test
+    public void testAddEmptyBatchOfContacts() {
+        ContactManagerImpl cm = new ContactManagerImpl();
+        assertEquals(cm.addNewContacts(Arrays.asList()).length, EMPTY_SIZE);
+        assertTrue(cm.getContacts(EMPTY_STRING).isEmpty());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testAddBatchOfContactsWithNullElement() {
+        new ContactManagerImpl().addNewContacts(Arrays.asList(new ContactSpec(CONTACT_1_NAME, CONTACT_1_NOTES), null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testContactSpecWithEmptyName() {
+        new ContactSpec(EMPTY_STRING, CONTACT_1_NOTES);
+    }
 }
@@ -0,0 +1,323 @@
+package test;
+
+import impl.ContactImpl;
+import impl.ContactManagerImpl;
+import impl.GroupCommit;
+import impl.JournalStorage;
+import impl.PersistenceStats;
+import impl.TimeSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import spec.Contact;
+import spec.ContactManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+import static test.TestCommon.*;
+
+/**
+ * ContactManager tests
+ *
+ * This class tests a ContactManager persisting its data with a
+ * snapshot and a journal of changes
+ *
+ * @author lmignot
+ */
+public class ContactManagerJournalTest {
+
+    private static final long NEVER_COMPACT = Long.MAX_VALUE;
+    private static final long ALWAYS_COMPACT = 0L;
+    // larger than a single record, smaller than the test data
+    private static final long COMPACT_TEST_DATA = 128L;
+
+    private Path dataFile;
+    private Path journalFile;
+
+    @Before
+    public void setUp() {
+        deleteDataFile();
+        deleteJournalFile();
+        dataFile = FileSystems.getDefault().getPath(FILENAME);
+        journalFile = FileSystems.getDefault().getPath(JOURNAL_FILENAME);
+    }
+
+    @After
+    public void tearDown() {
+        deleteDataFile();
+        deleteJournalFile();
+    }
+
+    private ContactManager journalCM(long compactionThreshold) {
+        return new ContactManagerImpl(new JournalStorage(dataFile, journalFile, compactionThreshold));
+    }
+
+    /**
+     * Adds the test contacts, a past and a future meeting and some notes
+     *
+     * @return the contacts attending the meetings
+     */
+    private Set<Contact> addTestData(ContactManager cm) {
+        addTestContacts(cm);
+        Set<Contact> contacts = cm.getContacts(CONTACT_1_ID, CONTACT_2_ID);
+        cm.addNewPastMeeting(contacts, new GregorianCalendar(PAST_YEAR, PAST_MONTH, PAST_DAY), MEETING_NOTES);
+        cm.addFutureMeeting(contacts, nextYear());
+        cm.addMeetingNotes(FIRST_MEETING_ID, MEETING_NOTES_2);
+        cm.getContacts(CONTACT_3_ID).iterator().next().addNotes(MEETING_NOTES_3);
+        return contacts;
+    }
+
+    private void assertTestData(ContactManager cm) {
+        assertEquals(cm.getContacts(EMPTY_STRING).size(), NUM_CONTACTS_DEFAULT);
+        assertEquals(cm.getPastMeeting(FIRST_MEETING_ID).getNotes(), MEETING_NOTES + NOTES_DELIMITER + MEETING_NOTES_2);
+        assertEquals(cm.getPastMeeting(FIRST_MEETING_ID).getContacts().size(), TWO);
+        assertNotNull(cm.getFutureMeeting(SECOND_MEETING_ID));
+        assertEquals(cm.getContacts(CONTACT_3_ID).iterator().next().getNotes(),
+            CONTACT_3_NOTES + NOTES_DELIMITER + MEETING_NOTES_3);
+    }
+
+    @Test
+    public void testChangesShouldBeReplayedFromJournal() {
+        ContactManager cm = journalCM(NEVER_COMPACT);
+        addTestData(cm);
+        cm.flush();
+
+        assertFalse(Files.exists(dataFile));
+        assertTrue(Files.exists(journalFile));
+        assertTestData(journalCM(NEVER_COMPACT));
+    }
+
+    @Test
+    public void testNewIdsShouldFollowReplayedIds() {
+        ContactManager cm = journalCM(NEVER_COMPACT);
+        addTestData(cm);
+        cm.flush();
+
+        ContactManager cm2 = journalCM(NEVER_COMPACT);
+        assertEquals(cm2.addNewContact(CONTACT_1_NAME, CONTACT_1_NOTES), SEVEN);
+        assertEquals(cm2.addFutureMeeting(cm2.getContacts(CONTACT_1_ID), nextYear()), THREE);
+    }
+
+    @Test
+    public void testCompactionShouldWriteSnapshotAndEmptyJournal() throws IOException {
+        ContactManager cm = journalCM(ALWAYS_COMPACT);
+        addTestData(cm);
+        cm.flush();
+
+        assertTrue(Files.exists(dataFile));
+        assertEquals(Files.size(journalFile), JOURNAL_HEADER_SIZE);
+        assertTestData(journalCM(NEVER_COMPACT));
+    }
+
+    @Test
+    public void testChangesAfterCompactionShouldBeReplayed() {
+        ContactManager cm = journalCM(ALWAYS_COMPACT);
+        addTestContacts(cm);
+        cm.flush();
+
+        ContactManager cm2 = journalCM(NEVER_COMPACT);
+        cm2.addNewPastMeeting(cm2.getContacts(CONTACT_1_ID),
+            new GregorianCalendar(PAST_YEAR, PAST_MONTH, PAST_DAY), MEETING_NOTES);
+        cm2.flush();
+
+        ContactManager cm3 = journalCM(NEVER_COMPACT);
+        assertEquals(cm3.getContacts(EMPTY_STRING).size(), NUM_CONTACTS_DEFAULT);
+        assertEquals(cm3.getPastMeeting(FIRST_MEETING_ID).getNotes(), MEETING_NOTES);
+    }
+
+    @Test
+    public void testJournalWritesAndReadsShouldBeCounted() throws IOException {
+        ContactManagerImpl cm = (ContactManagerImpl) journalCM(NEVER_COMPACT);
+        addTestData(cm);
+        cm.flush();
+
+        PersistenceStats flushed = cm.getPersistenceStats();
+        assertEquals(flushed.getFlushes(), ONE);
+        assertEquals(flushed.getBytesWritten(), Files.size(journalFile));
+        assertTrue(flushed.getRecordsWritten() >= NUM_CONTACTS_DEFAULT);
+        assertEquals(flushed.getWriteFailures(), ZERO);
+
+        ContactManagerImpl cm2 = (ContactManagerImpl) journalCM(NEVER_COMPACT);
+        assertTestData(cm2);
+        PersistenceStats loaded = cm2.getPersistenceStats();
+        assertEquals(loaded.getLoads(), ONE);
+        assertEquals(loaded.getBytesRead(), Files.size(journalFile));
+    }
+
+    @Test
+    public void testNotesAddedDuringAsyncCompactionShouldNotBeDuplicated() throws Exception {
+        ContactManagerImpl cm = (ContactManagerImpl) journalCM(COMPACT_TEST_DATA);
+        addTestData(cm);
+        CompletableFuture<Void> compacted = cm.flushAsync();
+        cm.getContacts(CONTACT_1_ID).iterator().next().addNotes(MEETING_NOTES);
+        compacted.get();
+        cm.flush();
+
+        assertEquals(journalCM(NEVER_COMPACT).getContacts(CONTACT_1_ID).iterator().next().getNotes(),
+            CONTACT_1_NOTES + NOTES_DELIMITER + MEETING_NOTES);
+    }
+
+    @Test
+    public void testMeetingsShouldShareTheContactsOfTheCM() {
+        ContactManager cm = journalCM(ALWAYS_COMPACT);
+        addTestData(cm);
+        cm.flush();
+        // one meeting from the snapshot, one replayed from the journal
+        ContactManager cm2 = journalCM(NEVER_COMPACT);
+        cm2.addFutureMeeting(cm2.getContacts(CONTACT_1_ID), nextYear());
+        cm2.flush();
+
+        ContactManager cm3 = journalCM(NEVER_COMPACT);
+        Contact c1 = cm3.getContacts(CONTACT_1_ID).iterator().next();
+        assertTrue(cm3.getPastMeeting(FIRST_MEETING_ID).getContacts().stream().anyMatch(c -> c == c1));
+        assertSame(cm3.getFutureMeeting(THREE).getContacts().iterator().next(), c1);
+    }
+
+    @Test
+    public void testNoteListShouldBeKeptByReplayAndCompaction() {
+        String note = MEETING_NOTES_2 + NOTES_DELIMITER + MEETING_NOTES_3;
+        ContactManager cm = journalCM(NEVER_COMPACT);
+        addTestContacts(cm);
+        cm.getContacts(CONTACT_1_ID).iterator().next().addNotes(note);
+        cm.flush();
+        List<String> expected = Arrays.asList(CONTACT_1_NOTES, note);
+
+        ContactManager replayed = journalCM(ALWAYS_COMPACT);
+        assertEquals(((ContactImpl) replayed.getContacts(CONTACT_1_ID).iterator().next()).getNoteList(), expected);
+        replayed.addNewContact(CONTACT_1_NAME, CONTACT_1_NOTES);
+        replayed.flush();
+        ContactManager compacted = journalCM(NEVER_COMPACT);
+        assertEquals(((ContactImpl) compacted.getContacts(CONTACT_1_ID).iterator().next()).getNoteList(), expected);
+    }
+
+    @Test
+    public void testGroupCommitShouldMakeChangesDurableWithoutFlush() {
+        ContactManager cm = new ContactManagerImpl(new JournalStorage(dataFile, journalFile, NEVER_COMPACT),
+            TimeSource.SYSTEM, new GroupCommit(1, TimeUnit.MILLISECONDS, 16));
+        addTestData(cm);
+
+        assertTestData(journalCM(NEVER_COMPACT));
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void testGroupCommitShouldThrowIfBatchCanNotBeWritten() throws IOException {
+        // a directory where the journal should be, so the batch can not be written
+        Path journalDir = FileSystems.getDefault().getPath(JOURNAL_FILENAME + ".dir");
+        Files.createDirectories(journalDir);
+        try {
+            ContactManager cm = new ContactManagerImpl(new JournalStorage(dataFile, journalDir, NEVER_COMPACT),
+                TimeSource.SYSTEM, new GroupCommit(1, TimeUnit.MILLISECONDS, 16));
+            cm.addNewContact(CONTACT_1_NAME, CONTACT_1_NOTES);
+        } finally {
+            Files.delete(journalDir);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGroupCommitShouldRejectNegativeWindow() {
+        new GroupCommit(-1, TimeUnit.MILLISECONDS, 16);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGroupCommitShouldRejectEmptyBatch() {
+        new GroupCommit(1, TimeUnit.MILLISECONDS, 0);
+    }
+
+    @Test
+    public void testRecordsAlreadyInSnapshotShouldNotBeReplayedTwice() throws IOException {
+        Path journalCopy = FileSystems.getDefault().getPath(JOURNAL_FILENAME + ".copy");
+        ContactManager cm = journalCM(NEVER_COMPACT);
+        addTestData(cm);
+        cm.flush();
+        Files.copy(journalFile, journalCopy, StandardCopyOption.REPLACE_EXISTING);
+
+        // compact, then put the old journal back as if compaction stopped before emptying it
+        ContactManager cm2 = journalCM(ALWAYS_COMPACT);
+        cm2.flush();
+        Files.move(journalCopy, journalFile, StandardCopyOption.REPLACE_EXISTING);
+
+        assertTestData(journalCM(NEVER_COMPACT));
+    }
+
+    @Test
+    public void testJournalShouldNotBeWrittenAfterFailedLoad() throws IOException {
+        Path snapshotCopy = FileSystems.getDefault().getPath(FILENAME + ".copy");
+        ContactManager cm = journalCM(ALWAYS_COMPACT);
+        addTestData(cm);
+        cm.flush();
+        ContactManager cm2 = journalCM(NEVER_COMPACT);
+        cm2.addNewContact(CONTACT_1_NAME, CONTACT_1_NOTES);
+        cm2.flush();
+        byte[] journal = Files.readAllBytes(journalFile);
+
+        // make the snapshot unreadable, then make and flush a change
+        Files.move(dataFile, snapshotCopy, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(FileSystems.getDefault().getPath(BACKUP_FILENAME));
+        Files.write(dataFile, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        ContactManager cm3 = journalCM(NEVER_COMPACT);
+        cm3.addNewContact(CONTACT_2_NAME, CONTACT_2_NOTES);
+        cm3.flush();
+        assertArrayEquals(Files.readAllBytes(journalFile), journal);
+
+        Files.move(snapshotCopy, dataFile, StandardCopyOption.REPLACE_EXISTING);
+        ContactManager cm4 = journalCM(NEVER_COMPACT);
+        assertEquals(cm4.getContacts(EMPTY_STRING).size(), SEVEN);
+        assertEquals(cm4.getContacts(CONTACT_1_NAME).size(), TWO);
+    }
+
+    @Test
+    public void testRecordWithInvalidContentsShouldFailTheLoad() throws IOException {
+        // a contact record with a valid checksum but an empty name
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeLong(1L);
+        out.writeByte(1);
+        out.writeInt(CONTACT_1_ID);
+        out.writeInt(0);
+        out.writeInt(0);
+        CRC32 crc = new CRC32();
+        crc.update(payload.toByteArray());
+        ByteBuffer journal = ByteBuffer.allocate(JOURNAL_HEADER_SIZE + 8 + payload.size());
+        journal.putInt(JOURNAL_MAGIC).putInt(1).putInt(payload.size()).putInt((int) crc.getValue());
+        journal.put(payload.toByteArray());
+        Files.write(journalFile, journal.array());
+
+        ContactManager cm = journalCM(NEVER_COMPACT);
+        assertTrue(cm.getContacts(EMPTY_STRING).isEmpty());
+        assertEquals(((ContactManagerImpl) cm).getPersistenceStats().getLoadFailures(), ONE);
+    }
+
+    @Test
+    public void testTornRecordAtEndOfJournalShouldBeIgnored() throws IOException {
+        ContactManager cm = journalCM(NEVER_COMPACT);
+        addTestData(cm);
+        cm.flush();
+        long size = Files.size(journalFile);
+        Files.write(journalFile, new byte[] {0, 0, 0, 42, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        ContactManager cm2 = journalCM(NEVER_COMPACT);
+        assertTestData(cm2);
+        assertEquals(Files.size(journalFile), size);
+
+        cm2.addNewContact(CONTACT_1_NAME, CONTACT_1_NOTES);
+        cm2.flush();
+        assertEquals(journalCM(NEVER_COMPACT).getContacts(EMPTY_STRING).size(), SEVEN);
+    }
+}
@@ -0,0 +1,169 @@
+package test;
+
+import impl.ContactImpl;
+import impl.ContactManagerImpl;
+import impl.MappedStorage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import spec.Contact;
+import spec.ContactManager;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static test.TestCommon.*;
+
+/**
+ * ContactManager tests
+ *
+ * This class tests a ContactManager reading its data from a
+ * memory-mapped file on demand
+ *
+ * @author lmignot
+ */
+public class ContactManagerMappedTest {
+
+    private Path dataFile;
+
+    @Before
+    public void setUp() {
+        deleteDataFile();
+        dataFile = FileSystems.getDefault().getPath(FILENAME);
+    }
+
+    @After
+    public void tearDown() {
+        deleteDataFile();
+    }
+
+    private ContactManager mappedCM() {
+        return new ContactManagerImpl(new MappedStorage(dataFile));
+    }
+
+    /**
+     * Adds the test contacts, a past and a future meeting, then flushes
+     */
+    private void writeTestData() {
+        ContactManager cm = mappedCM();
+        addTestContacts(cm);
+        Set<Contact> contacts = cm.getContacts(CONTACT_1_ID, CONTACT_2_ID);
+        cm.addNewPastMeeting(contacts, new GregorianCalendar(PAST_YEAR, PAST_MONTH, PAST_DAY), MEETING_NOTES);
+        cm.addFutureMeeting(contacts, nextYear());
+        cm.flush();
+    }
+
+    @Test
+    public void testLookupsByIdShouldReadMappedFile() {
+        writeTestData();
+        ContactManager cm = mappedCM();
+
+        assertEquals(cm.getPastMeeting(FIRST_MEETING_ID).getNotes(), MEETING_NOTES);
+        assertEquals(cm.getPastMeeting(FIRST_MEETING_ID).getContacts().size(), TWO);
+        assertNotNull(cm.getFutureMeeting(SECOND_MEETING_ID));
+        assertNull(cm.getMeeting(THREE));
+        assertEquals(cm.getContacts(CONTACT_3_ID).iterator().next().getNotes(), CONTACT_3_NOTES);
+        assertEquals(cm.getContacts(CONTACT_1_ID, CONTACT_2_ID, CONTACT_3_ID).size(), THREE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownContactIdShouldThrowBeforeLoading() {
+        writeTestData();
+        mappedCM().getContacts(SEVEN);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFutureMeetingAsPastShouldThrowBeforeLoading() {
+        writeTestData();
+        mappedCM().getPastMeeting(SECOND_MEETING_ID);
+    }
+
+    @Test
+    public void testContactsShouldKeepTheirIdentityWhenDataIsLoaded() {
+        writeTestData();
+        ContactManager cm = mappedCM();
+        Contact c1 = cm.getContacts(CONTACT_1_ID).iterator().next();
+
+        assertTrue(cm.getMeeting(FIRST_MEETING_ID).getContacts().contains(c1));
+        assertEquals(cm.getPastMeetingListFor(c1).size(), ONE);
+        assertEquals(cm.getFutureMeetingList(c1).size(), ONE);
+        assertTrue(cm.getContacts(EMPTY_STRING).contains(c1));
+    }
+
+    @Test
+    public void testFlushWithoutChangesShouldNotRewriteFile() {
+        writeTestData();
+        deleteFile(BACKUP_FILENAME);
+
+        ContactManager cm = mappedCM();
+        cm.getMeeting(FIRST_MEETING_ID);
+        cm.flush();
+
+        assertFalse(Files.exists(FileSystems.getDefault().getPath(BACKUP_FILENAME)));
+    }
+
+    @Test
+    public void testNotesAddedBeforeLoadingShouldBeFlushed() {
+        writeTestData();
+        ContactManager cm = mappedCM();
+        cm.getContacts(CONTACT_3_ID).iterator().next().addNotes(MEETING_NOTES_3);
+        cm.flush();
+
+        assertEquals(mappedCM().getContacts(CONTACT_3_ID).iterator().next().getNotes(),
+            CONTACT_3_NOTES + NOTES_DELIMITER + MEETING_NOTES_3);
+    }
+
+    @Test
+    public void testNoteListShouldBeKeptInMappedFile() {
+        String note = MEETING_NOTES_2 + NOTES_DELIMITER + MEETING_NOTES_3;
+        writeTestData();
+        ContactManager cm = mappedCM();
+        cm.getContacts(CONTACT_1_ID).iterator().next().addNotes(note);
+        cm.flush();
+
+        ContactImpl c1 = (ContactImpl) mappedCM().getContacts(CONTACT_1_ID).iterator().next();
+        assertEquals(c1.getNoteList(), Arrays.asList(CONTACT_1_NOTES, note));
+    }
+
+    @Test
+    public void testChangesShouldLoadDataAndContinueIds() {
+        writeTestData();
+        ContactManager cm = mappedCM();
+        assertEquals(cm.addNewContact(CONTACT_1_NAME, CONTACT_1_NOTES), SEVEN);
+        assertEquals(cm.addFutureMeeting(cm.getContacts(CONTACT_1_ID), nextYear()), THREE);
+        cm.flush();
+
+        ContactManager cm2 = mappedCM();
+        assertNotNull(cm2.getFutureMeeting(THREE));
+        assertEquals(cm2.getContacts(EMPTY_STRING).size(), SEVEN);
+    }
+
+    @Test
+    public void testCorruptFileShouldStartEmpty() throws IOException {
+        Files.write(dataFile, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+        ContactManager cm = mappedCM();
+
+        assertNull(cm.getMeeting(FIRST_MEETING_ID));
+        assertTrue(cm.getContacts(EMPTY_STRING).isEmpty());
+    }
+
+    @Test
+    public void testNegativeTimeZoneCountShouldStartEmpty() throws IOException {
+        writeTestData();
+        deleteFile(BACKUP_FILENAME);
+        // the number of time zones is at offset 40 of the header
+        byte[] data = Files.readAllBytes(dataFile);
+        data[40] = (byte) 0xFF;
+        Files.write(dataFile, data);
+        ContactManager cm = mappedCM();
+
+        assertNull(cm.getMeeting(FIRST_MEETING_ID));
+        assertTrue(cm.getContacts(EMPTY_STRING).isEmpty());
+    }
+}
@@ -2,12 +2,17 @@ package test;
 
 import impl.ContactImpl;
 import impl.ContactManagerImpl;
+import impl.FakeTimeSource;
+import impl.MeetingSpec;
+import impl.SnapshotStorage;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import spec.*;
 
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 import static test.TestCommon.*;
@@ -118,6 +123,31 @@ public class ContactManagerMeetingsTest {
         contactsCM.addFutureMeeting(EMPTY_CONTACTS, futureDate);
     }
 
+    @Test
+    public void testRejectedMeetingWithEmptyContactsShouldNotUseId () {
+        try {
+            contactsCM.addFutureMeeting(EMPTY_CONTACTS, futureDate);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        try {
+            contactsCM.addNewPastMeeting(EMPTY_CONTACTS, pastDate, MEETING_NOTES);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        assertEquals(contactsCM.addFutureMeeting(contactsA, futureDate), FIRST_MEETING_ID);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddFutureMeetingWithContactFromAnotherCM () {
+        // same ID and name as one of contactsCM's contacts, but not the same contact
+        Set<Contact> contacts = new HashSet<>();
+        contacts.add(new ContactImpl(CONTACT_1_ID, CONTACT_1_NAME, CONTACT_1_NOTES));
+        contactsCM.addFutureMeeting(contacts, futureDate);
+    }
+
     @Test(expected = NullPointerException.class)
     public void testAddFutureMeetingWithNullDate () {
         contactsCM.addFutureMeeting(contactsA, NULL_CAL);
@@ -326,6 +356,33 @@ public class ContactManagerMeetingsTest {
         contactsCM.getMeetingListOn(NULL_CAL);
     }
 
+    @Test
+    public void testGetMeetingsBetweenSingleDayMatchesGetMeetingListOn() {
+        ContactManagerImpl cm = (ContactManagerImpl) meetingsCM;
+        List<Meeting> meetingList = cm.getMeetingsBetween(futureDate, futureDate);
+
+        assertEquals(meetingList, cm.getMeetingListOn(futureDate));
+    }
+
+    @Test
+    public void testGetMeetingsBetweenIsSortedWithNoDuplicates() {
+        List<Meeting> meetingList = ((ContactManagerImpl) meetingsCM).getMeetingsBetween(pastDate, futureDate);
+
+        assertEquals(meetingList.size(), FIVE + FIVE);
+        assertEquals(meetingList.get(ZERO).getId(), TWO);
+        assertEquals(meetingList.get(FIVE).getId(), ONE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetMeetingsBetweenShouldThrowForReversedRange() {
+        ((ContactManagerImpl) meetingsCM).getMeetingsBetween(futureDate, pastDate);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testGetMeetingsBetweenShouldThrowForNullDate() {
+        ((ContactManagerImpl) meetingsCM).getMeetingsBetween(pastDate, NULL_CAL);
+    }
+
 /* =================== GET MEETING LISTS FOR SPECIFIC CONTACT =================== */
 
     @Test
@@ -370,6 +427,86 @@ public class ContactManagerMeetingsTest {
         contactsCM.getPastMeetingListFor(new ContactImpl(ILLEGAL_ID_1, NON_EXISTENT_CONTACT_NAME));
     }
 
+/* =================== PAGED AND STREAMED MEETING LISTS =================== */
+
+    @Test
+    public void testFutureMeetingPagesMatchFutureMeetingList() {
+        ContactManagerImpl cm = (ContactManagerImpl) meetingsCM;
+        Contact testContact = cm.getContacts(CONTACT_4_ID).stream().findFirst().get();
+
+        List<Meeting> firstPage = cm.getFutureMeetingPage(testContact, null, TWO);
+        List<Meeting> secondPage = cm.getFutureMeetingPage(testContact, firstPage.get(ONE), TWO);
+        List<Meeting> thirdPage = cm.getFutureMeetingPage(testContact, secondPage.get(ONE), TWO);
+
+        List<Meeting> paged = new ArrayList<>(firstPage);
+        paged.addAll(secondPage);
+        paged.addAll(thirdPage);
+        assertEquals(thirdPage.size(), ONE);
+        assertEquals(paged, cm.getFutureMeetingList(testContact));
+        assertTrue(cm.getFutureMeetingPage(testContact, thirdPage.get(ZERO), TWO).isEmpty());
+    }
+
+    @Test
+    public void testPastMeetingPagesMatchPastMeetingList() {
+        ContactManagerImpl cm = (ContactManagerImpl) meetingsCM;
+        Contact testContact = cm.getContacts(CONTACT_4_ID).stream().findFirst().get();
+
+        List<PastMeeting> firstPage = cm.getPastMeetingPageFor(testContact, null, THREE);
+        List<PastMeeting> secondPage = cm.getPastMeetingPageFor(testContact, firstPage.get(TWO), THREE);
+
+        List<PastMeeting> paged = new ArrayList<>(firstPage);
+        paged.addAll(secondPage);
+        assertEquals(paged, cm.getPastMeetingListFor(testContact));
+    }
+
+    @Test
+    public void testMeetingPageOnStartsAfterTheGivenMeeting() {
+        ContactManagerImpl cm = (ContactManagerImpl) meetingsCM;
+        List<Meeting> meetingList = cm.getMeetingListOn(futureDate);
+
+        List<Meeting> page = cm.getMeetingPageOn(futureDate, meetingList.get(ONE), TWO);
+
+        assertEquals(page, meetingList.subList(TWO, FOUR));
+    }
+
+    @Test
+    public void testStreamsMatchMeetingLists() {
+        ContactManagerImpl cm = (ContactManagerImpl) meetingsCM;
+        Contact testContact = cm.getContacts(CONTACT_4_ID).stream().findFirst().get();
+
+        assertEquals(cm.streamFutureMeetings(testContact).collect(Collectors.toList()),
+            cm.getFutureMeetingList(testContact));
+        assertEquals(cm.streamPastMeetingsFor(testContact).collect(Collectors.toList()),
+            cm.getPastMeetingListFor(testContact));
+        assertEquals(cm.streamMeetingsOn(pastDate).collect(Collectors.toList()),
+            cm.getMeetingListOn(pastDate));
+    }
+
+    @Test
+    public void testStreamFetchesMoreThanOnePage() {
+        ContactManagerImpl cm = (ContactManagerImpl) contactsCM;
+        Contact testContact = contactsA.stream().findFirst().get();
+        int count = 600;
+        for (int i = 0; i < count; i++) {
+            Calendar date = (Calendar) futureDate.clone();
+            date.add(Calendar.MINUTE, i);
+            cm.addFutureMeeting(contactsA, date);
+        }
+
+        assertEquals(cm.streamFutureMeetings(testContact).count(), count);
+        assertEquals(cm.streamFutureMeetings(testContact).skip(count - 1).findFirst().get().getId(), count);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMeetingPageWithZeroLimitShouldThrow() {
+        ((ContactManagerImpl) meetingsCM).getMeetingPageOn(futureDate, null, ZERO);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStreamForInvalidContactShouldThrow() {
+        ((ContactManagerImpl) contactsCM).streamPastMeetingsFor(new ContactImpl(ILLEGAL_ID_1, NON_EXISTENT_CONTACT_NAME));
+    }
+
     /* =================== ADD NOTES TO MEETINGS =================== */
 
     @Test
@@ -390,6 +527,94 @@ public class ContactManagerMeetingsTest {
         assertEquals(contactsCM.getPastMeeting(ONE).getNotes(), MEETING_NOTES);
     }
 
+    @Test
+    public void testMeetingMovesToPastMeetingListAfterNotes () {
+        Contact testContact = contactsA.stream().findFirst().get();
+        Calendar futureTime = new GregorianCalendar();
+        // far enough ahead that the meeting is still in the future when the list is checked
+        futureTime.add(Calendar.MILLISECOND, FIFTY_MILLISECONDS);
+        contactsCM.addFutureMeeting(contactsA, futureTime);
+        assertEquals(contactsCM.getFutureMeetingList(testContact).size(), ONE);
+
+        try {
+            Thread.sleep(HUNDRED_MILLISECONDS);
+        } catch (InterruptedException iEx) {
+            iEx.printStackTrace();
+        }
+
+        contactsCM.addMeetingNotes(ONE, MEETING_NOTES);
+        assertTrue(contactsCM.getFutureMeetingList(testContact).isEmpty());
+        assertEquals(contactsCM.getPastMeetingListFor(testContact).size(), ONE);
+        assertEquals(contactsCM.getPastMeetingListFor(testContact).get(ZERO).getNotes(), MEETING_NOTES);
+    }
+
+    @Test
+    public void testMeetingMovesToPastMeetingListWhenItsDatePasses () {
+        Contact testContact = contactsA.stream().findFirst().get();
+        Calendar futureTime = new GregorianCalendar();
+        futureTime.add(Calendar.MILLISECOND, FIFTY_MILLISECONDS);
+        contactsCM.addFutureMeeting(contactsA, futureTime);
+        assertEquals(contactsCM.getFutureMeetingList(testContact).size(), ONE);
+        assertTrue(contactsCM.getPastMeetingListFor(testContact).isEmpty());
+
+        try {
+            Thread.sleep(HUNDRED_MILLISECONDS);
+        } catch (InterruptedException iEx) {
+            iEx.printStackTrace();
+        }
+
+        assertTrue(contactsCM.getFutureMeetingList(testContact).isEmpty());
+        assertEquals(contactsCM.getPastMeetingListFor(testContact).size(), ONE);
+        assertEquals(contactsCM.getPastMeeting(ONE).getNotes(), EMPTY_STRING);
+    }
+
+    @Test
+    public void testMeetingMovesToPastMeetingListWhenFakeClockPassesIt () {
+        FakeTimeSource clock = new FakeTimeSource(futureDate.getTimeInMillis());
+        ContactManagerImpl cm = new ContactManagerImpl(new SnapshotStorage(Paths.get(FILENAME)), clock);
+        addTestContacts(cm);
+        Set<Contact> contacts = cm.getContacts(CONTACT_1_ID, CONTACT_2_ID);
+        Contact testContact = contacts.iterator().next();
+        Calendar meetingTime = (Calendar) futureDate.clone();
+        meetingTime.add(Calendar.HOUR, ONE);
+        int id = cm.addFutureMeeting(contacts, meetingTime);
+
+        clock.advance(HOUR_IN_MILLISECONDS - ONE_MILLISECOND);
+        assertEquals(cm.getFutureMeetingList(testContact).size(), ONE);
+
+        clock.advance(ONE_MILLISECOND);
+        assertTrue(cm.getFutureMeetingList(testContact).isEmpty());
+        assertEquals(cm.getPastMeetingListFor(testContact).size(), ONE);
+        cm.addMeetingNotes(id, MEETING_NOTES);
+        assertEquals(cm.getPastMeeting(id).getNotes(), MEETING_NOTES);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddFutureMeetingBeforeFakeClockShouldThrow () {
+        FakeTimeSource clock = new FakeTimeSource(futureDate.getTimeInMillis());
+        ContactManagerImpl cm = new ContactManagerImpl(new SnapshotStorage(Paths.get(FILENAME)), clock);
+        addTestContacts(cm);
+        Calendar meetingTime = (Calendar) futureDate.clone();
+        meetingTime.add(Calendar.MINUTE, -ONE);
+
+        cm.addFutureMeeting(cm.getContacts(CONTACT_1_ID), meetingTime);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetFutureMeetingAfterItsDatePassesShouldThrow () {
+        Calendar futureTime = new GregorianCalendar();
+        futureTime.add(Calendar.MILLISECOND, ONE_MILLISECOND);
+        contactsCM.addFutureMeeting(contactsA, futureTime);
+
+        try {
+            Thread.sleep(FIVE_MILLISECONDS);
+        } catch (InterruptedException iEx) {
+            iEx.printStackTrace();
+        }
+
+        contactsCM.getFutureMeeting(ONE);
+    }
+
     @Test
     public void testAppendMeetingNotes () {
         contactsCM.addNewPastMeeting(contactsA, pastDate, MEETING_NOTES);
@@ -400,6 +625,35 @@ public class ContactManagerMeetingsTest {
                 MEETING_NOTES + NOTES_DELIMITER + MEETING_NOTES_2 + NOTES_DELIMITER + MEETING_NOTES_3);
     }
 
+    @Test
+    public void testAppendMeetingNotesKeepsEarlierMeetingsUnchanged () {
+        contactsCM.addNewPastMeeting(contactsA, pastDate, MEETING_NOTES);
+        PastMeeting before = contactsCM.getPastMeeting(ONE);
+        assertEquals(before.getNotes(), MEETING_NOTES);
+
+        contactsCM.addMeetingNotes(ONE, MEETING_NOTES_2);
+        contactsCM.addMeetingNotes(ONE, MEETING_NOTES_3);
+        assertEquals(before.getNotes(), MEETING_NOTES);
+        assertEquals(contactsCM.getPastMeeting(ONE).getNotes(),
+                MEETING_NOTES + NOTES_DELIMITER + MEETING_NOTES_2 + NOTES_DELIMITER + MEETING_NOTES_3);
+    }
+
+    @Test
+    public void testAddMeetingNotesToDuplicateMeetingKeepsFirstListed () {
+        Contact testContact = contactsA.stream().findFirst().get();
+        contactsCM.addNewPastMeeting(contactsA, pastDate, MEETING_NOTES);
+        contactsCM.addNewPastMeeting(contactsA, pastDate, MEETING_NOTES_2);
+
+        contactsCM.addMeetingNotes(TWO, MEETING_NOTES_3);
+        assertEquals(contactsCM.getPastMeetingListFor(testContact).size(), ONE);
+        assertEquals(contactsCM.getPastMeetingListFor(testContact).get(ZERO).getNotes(), MEETING_NOTES);
+
+        contactsCM.addMeetingNotes(ONE, MEETING_NOTES_3);
+        assertEquals(contactsCM.getMeetingListOn(pastDate).size(), ONE);
+        assertEquals(contactsCM.getPastMeetingListFor(testContact).get(ZERO).getNotes(),
+                MEETING_NOTES + NOTES_DELIMITER + MEETING_NOTES_3);
+    }
+
     @Test(expected = NullPointerException.class)
     public void testAddMeetingNotesWithNullNotes () {
         contactsCM.addMeetingNotes(ONE, NULL_STRING);
@@ -415,4 +669,64 @@ public class ContactManagerMeetingsTest {
         contactsCM.addFutureMeeting(contactsA, futureDate);
         contactsCM.addMeetingNotes(ONE, MEETING_NOTES);
     }
+
+    /* =================== BATCHES =================== */
+
+    @Test
+    public void testAddBatchOfMeetings () {
+        ContactManagerImpl cm = (ContactManagerImpl) contactsCM;
+        int[] ids = cm.addMeetings(Arrays.asList(
+            new MeetingSpec(contactsA, futureDate),
+            new MeetingSpec(contactsA, pastDate, MEETING_NOTES)
+        ));
+
+        assertArrayEquals(ids, new int[] {FIRST_MEETING_ID, SECOND_MEETING_ID});
+        assertEquals(cm.getFutureMeeting(FIRST_MEETING_ID).getDate(), futureDate);
+        assertEquals(cm.getPastMeeting(SECOND_MEETING_ID).getNotes(), MEETING_NOTES);
+        assertEquals(cm.addFutureMeeting(contactsA, futureDate), THREE);
+    }
+
+    @Test
+    public void testBatchOfMeetingsShouldKeepDatesAsGiven () {
+        ContactManagerImpl cm = (ContactManagerImpl) contactsCM;
+        Calendar date = (Calendar) futureDate.clone();
+        MeetingSpec first = new MeetingSpec(contactsA, date);
+        // the same calendar reused for the next meeting, as when building a batch in a loop
+        date.add(Calendar.DAY_OF_MONTH, 1);
+        MeetingSpec second = new MeetingSpec(contactsA, date);
+        date.add(Calendar.DAY_OF_MONTH, 1);
+        first.getDate().add(Calendar.DAY_OF_MONTH, 1);
+        cm.addMeetings(Arrays.asList(first, second));
+
+        assertEquals(cm.getFutureMeeting(FIRST_MEETING_ID).getDate().getTimeInMillis(), futureDate.getTimeInMillis());
+        Calendar nextDay = (Calendar) futureDate.clone();
+        nextDay.add(Calendar.DAY_OF_MONTH, 1);
+        assertEquals(cm.getFutureMeeting(SECOND_MEETING_ID).getDate().getTimeInMillis(), nextDay.getTimeInMillis());
+    }
+
+    @Test
+    public void testInvalidBatchOfMeetingsAddsNothing () {
+        ContactManagerImpl cm = (ContactManagerImpl) contactsCM;
+        try {
+            cm.addMeetings(Arrays.asList(
+                new MeetingSpec(contactsA, futureDate),
+                new MeetingSpec(contactsA, futureDate, MEETING_NOTES)
+            ));
+            fail();
+        } catch (IllegalArgumentException ex) {
+            assertNull(cm.getMeeting(FIRST_MEETING_ID));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddBatchOfMeetingsWithUnknownContact () {
+        Set<Contact> unknown = new HashSet<>(contactsA);
+        unknown.add(new ContactImpl(ILLEGAL_ID_1, CONTACT_1_NAME));
+        ((ContactManagerImpl) contactsCM).addMeetings(Arrays.asList(new MeetingSpec(unknown, futureDate)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMeetingSpecWithEmptyContacts () {
+        new MeetingSpec(EMPTY_CONTACTS, futureDate);
+    }
 }
@@ -1,6 +1,8 @@
 package test;
 
+import impl.ContactImpl;
 import impl.ContactManagerImpl;
+import impl.PastMeetingImpl;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -9,10 +11,17 @@ import spec.ContactManager;
 import spec.Meeting;
 import spec.PastMeeting;
 
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import static org.junit.Assert.*;
@@ -111,4 +120,102 @@ public class ContactManagerTest {
         assertEquals(m2.getDate(), m2b.getDate());
         assertEquals(m2.getNotes(), m2b.getNotes());
     }
+
+    @Test
+    public void testDataFileShouldBeInBinaryFormatAfterFlush() throws IOException {
+        contactsCM.flush();
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(FileSystems.getDefault().getPath(FILENAME)))) {
+            assertEquals(in.readInt(), SNAPSHOT_MAGIC);
+        }
+    }
+
+    @Test
+    public void testLegacyDataFileShouldBeReadAndMigrated() throws IOException {
+        Set<Contact> contacts = new HashSet<>();
+        contacts.add(new ContactImpl(CONTACT_1_ID, CONTACT_1_NAME, CONTACT_1_NOTES));
+        contacts.add(new ContactImpl(CONTACT_2_ID, CONTACT_2_NAME, CONTACT_2_NOTES));
+        List<Meeting> meetings = new ArrayList<>();
+        meetings.add(new PastMeetingImpl(FIRST_MEETING_ID,
+            new GregorianCalendar(PAST_YEAR, PAST_MONTH, PAST_DAY), contacts, MEETING_NOTES));
+
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(FileSystems.getDefault().getPath(FILENAME)))) {
+            out.writeObject(contacts);
+            out.writeObject(meetings);
+            out.writeObject(SECOND_MEETING_ID);
+            out.writeObject(CONTACT_3_ID);
+        }
+
+        ContactManager legacyCM = new ContactManagerImpl();
+        assertEquals(legacyCM.getContacts(EMPTY_STRING).size(), TWO);
+        assertEquals(legacyCM.getPastMeeting(FIRST_MEETING_ID).getNotes(), MEETING_NOTES);
+        assertEquals(legacyCM.addNewContact(CONTACT_3_NAME, CONTACT_3_NOTES), CONTACT_3_ID);
+
+        legacyCM.flush();
+        ContactManager migratedCM = new ContactManagerImpl();
+        assertEquals(migratedCM.getContacts(EMPTY_STRING).size(), THREE);
+        assertEquals(migratedCM.getPastMeeting(FIRST_MEETING_ID).getContacts().size(), TWO);
+        assertEquals(migratedCM.getPastMeeting(FIRST_MEETING_ID).getNotes(), MEETING_NOTES);
+    }
+
+    @Test
+    public void testNoteListShouldBeKeptAfterFlush() {
+        String note = MEETING_NOTES_2 + NOTES_DELIMITER + MEETING_NOTES_3;
+        contactsCM.getContacts(CONTACT_1_ID).iterator().next().addNotes(note);
+        contactsCM.flush();
+
+        ContactImpl c1 = (ContactImpl) new ContactManagerImpl().getContacts(CONTACT_1_ID).iterator().next();
+        assertEquals(c1.getNoteList(), Arrays.asList(CONTACT_1_NOTES, note));
+    }
+
+    @Test
+    public void testFlushShouldKeepPreviousGenerationAndNoTempFile() {
+        contactsCM.flush();
+        contactsCM.addNewContact(CONTACT_1_NAME, CONTACT_1_NOTES);
+        contactsCM.flush();
+
+        assertTrue(Files.exists(FileSystems.getDefault().getPath(BACKUP_FILENAME)));
+        assertFalse(Files.exists(FileSystems.getDefault().getPath(TEMP_FILENAME)));
+        assertEquals(new ContactManagerImpl().getContacts(EMPTY_STRING).size(), SEVEN);
+    }
+
+    @Test
+    public void testCorruptDataFileShouldFallBackToPreviousGeneration() throws IOException {
+        contactsCM.flush();
+        contactsCM.addNewContact(CONTACT_1_NAME, CONTACT_1_NOTES);
+        contactsCM.flush();
+        Files.write(FileSystems.getDefault().getPath(FILENAME), new byte[] {1, 2, 3});
+
+        assertEquals(new ContactManagerImpl().getContacts(EMPTY_STRING).size(), NUM_CONTACTS_DEFAULT);
+    }
+
+    @Test
+    public void testDataFileWithInvalidCountShouldFallBackToPreviousGeneration() throws IOException {
+        contactsCM.flush();
+        contactsCM.addNewContact(CONTACT_1_NAME, CONTACT_1_NOTES);
+        contactsCM.flush();
+        // a negative number of time zones, after the header, next IDs and journal sequence
+        Path file = FileSystems.getDefault().getPath(FILENAME);
+        byte[] data = Files.readAllBytes(file);
+        data[24] = (byte) 0xFF;
+        Files.write(file, data);
+
+        assertEquals(new ContactManagerImpl().getContacts(EMPTY_STRING).size(), NUM_CONTACTS_DEFAULT);
+    }
+
+    @Test
+    public void testFailedFlushShouldLeaveDataFileIntact() throws IOException {
+        contactsCM.flush();
+        Path temp = FileSystems.getDefault().getPath(TEMP_FILENAME);
+        // a directory in place of the temp file makes the next write fail
+        Files.createDirectory(temp);
+        try {
+            contactsCM.addNewContact(CONTACT_1_NAME, CONTACT_1_NOTES);
+            contactsCM.flush();
+        } finally {
+            deleteFile(TEMP_FILENAME);
+        }
+
+        assertEquals(new ContactManagerImpl().getContacts(EMPTY_STRING).size(), NUM_CONTACTS_DEFAULT);
+    }
 }
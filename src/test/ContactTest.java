@@ -4,6 +4,8 @@ import impl.ContactImpl;
 import org.junit.Test;
 import spec.Contact;
 
+import java.util.Arrays;
+
 import static org.junit.Assert.assertEquals;
 import static test.TestCommon.*;
 
@@ -56,6 +58,44 @@ public class ContactTest {
         assertEquals(testContact.getNotes(), MEETING_NOTES + NOTES_DELIMITER + MEETING_NOTES_2);
     }
 
+    @Test
+    public void testGetNotesAfterEachAddition () {
+        Contact testContact = new ContactImpl(CONTACT_1_ID, CONTACT_1_NAME, MEETING_NOTES);
+        assertEquals(testContact.getNotes(), MEETING_NOTES);
+        testContact.addNotes(MEETING_NOTES_2);
+        assertEquals(testContact.getNotes(), MEETING_NOTES + NOTES_DELIMITER + MEETING_NOTES_2);
+        testContact.addNotes(MEETING_NOTES_3);
+
+        assertEquals(testContact.getNotes(),
+                MEETING_NOTES + NOTES_DELIMITER + MEETING_NOTES_2 + NOTES_DELIMITER + MEETING_NOTES_3);
+    }
+
+    @Test
+    public void testGetNoteList () {
+        ContactImpl testContact = new ContactImpl(CONTACT_1_ID, CONTACT_1_NAME, MEETING_NOTES);
+        testContact.addNotes(MEETING_NOTES_2);
+
+        assertEquals(testContact.getNoteList(), Arrays.asList(MEETING_NOTES, MEETING_NOTES_2));
+    }
+
+    @Test
+    public void testGetNoteListWithNewLinesInNotes () {
+        ContactImpl testContact = new ContactImpl(CONTACT_1_ID, CONTACT_1_NAME, MEETING_NOTES);
+        testContact.addNotes(MEETING_NOTES_2 + NOTES_DELIMITER + MEETING_NOTES_3);
+        testContact.getNotes();
+        testContact.addNotes(MEETING_NOTES);
+
+        assertEquals(testContact.getNoteList(),
+            Arrays.asList(MEETING_NOTES, MEETING_NOTES_2 + NOTES_DELIMITER + MEETING_NOTES_3, MEETING_NOTES));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testNoteListIsUnmodifiable () {
+        ContactImpl testContact = new ContactImpl(CONTACT_1_ID, CONTACT_1_NAME, MEETING_NOTES);
+
+        testContact.getNoteList().add(MEETING_NOTES_2);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testAddEmptyNoteToContact () {
         Contact testContact = new ContactImpl(CONTACT_1_ID, CONTACT_1_NAME);
@@ -1,5 +1,6 @@
 package test;
 
+import impl.ContactImpl;
 import impl.FutureMeetingImpl;
 import org.junit.Before;
 import org.junit.Test;
@@ -9,9 +10,12 @@ import spec.Meeting;
 
 import java.util.Calendar;
 import java.util.GregorianCalendar;
+import java.util.HashSet;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static test.TestCommon.*;
 
 /**
@@ -79,4 +83,36 @@ public class FutureMeetingTest {
     public void emptyContactsShouldThrow () {
         new FutureMeetingImpl(MEETING_ID, futureDate, EMPTY_CONTACTS);
     }
+
+    @Test
+    public void meetingsWithTheSameDateAndContactsShouldBeEqual() {
+        Meeting first = new FutureMeetingImpl(MEETING_ID, futureDate, meetingContacts);
+        Meeting second = new FutureMeetingImpl(MEETING_ID + 1, futureDate, new HashSet<>(meetingContacts));
+
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+    }
+
+    @Test
+    public void containsShouldOnlyMatchTheSameContact() {
+        Meeting mtg = new FutureMeetingImpl(MEETING_ID, futureDate, meetingContacts);
+        Contact attendee = meetingContacts.iterator().next();
+
+        assertTrue(mtg.getContacts().contains(attendee));
+        assertFalse(mtg.getContacts().contains(new ContactImpl(attendee.getId(), attendee.getName())));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void contactsShouldNotBeModifiable() {
+        Meeting mtg = new FutureMeetingImpl(MEETING_ID, futureDate, meetingContacts);
+        mtg.getContacts().clear();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void contactsWithTheSameIdShouldThrow() {
+        Set<Contact> contacts = new HashSet<>(meetingContacts);
+        Contact attendee = meetingContacts.iterator().next();
+        contacts.add(new ContactImpl(attendee.getId(), attendee.getName()));
+        new FutureMeetingImpl(MEETING_ID, futureDate, contacts);
+    }
 }
@@ -0,0 +1,156 @@
+package test;
+
+import impl.ContactManagerImpl;
+import impl.InstrumentedContactManager;
+import impl.OperationStats;
+import impl.PersistenceStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.GregorianCalendar;
+
+import static org.junit.Assert.*;
+import static test.TestCommon.*;
+
+/**
+ * ContactManager tests
+ *
+ * This class tests the metrics recorded by an instrumented ContactManager
+ *
+ * @author lmignot
+ */
+public class InstrumentedContactManagerTest {
+
+    private static final int SEARCHES = 100;
+
+    private InstrumentedContactManager cm;
+
+    @Before
+    public void setUp() {
+        deleteDataFile();
+        cm = new InstrumentedContactManager(new ContactManagerImpl());
+    }
+
+    @After
+    public void tearDown() throws JMException {
+        cm.unregisterMBean();
+        deleteDataFile();
+    }
+
+    @Test
+    public void testCallsAreCounted() {
+        addTestContacts(cm);
+        cm.getContacts(CONTACT_1_ID);
+        cm.getContacts(CONTACT_1_ID, CONTACT_2_ID);
+
+        assertEquals(cm.getOperations().get("addNewContact").getCalls(), SIX);
+        assertEquals(cm.getOperations().get("getContacts(int...)").getCalls(), TWO);
+        assertEquals(cm.getOperations().get("getMeeting").getCalls(), ZERO);
+        assertEquals(cm.getContactCount(), SIX);
+        assertEquals(cm.getMeetingCount(), ZERO);
+    }
+
+    @Test
+    public void testErrorsAreCountedByType() {
+        try {
+            cm.getContacts(ID_NEG);
+            fail();
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        try {
+            cm.addNewContact(NULL_STRING, NULL_STRING);
+            fail();
+        } catch (NullPointerException ex) {
+            // expected
+        }
+
+        OperationStats stats = cm.getOperations().get("getContacts(int...)");
+        assertEquals(stats.getCalls(), ONE);
+        assertEquals((long) stats.getErrors().get(IllegalArgumentException.class.getName()), ONE);
+        assertEquals((long) cm.getOperations().get("addNewContact").getErrors()
+            .get(NullPointerException.class.getName()), ONE);
+    }
+
+    @Test
+    public void testLatencyPercentilesAreOrdered() {
+        addTestContacts(cm);
+        for (int i = 0; i < SEARCHES; i++) {
+            cm.getContacts(CONTACT_1_NAME);
+        }
+
+        OperationStats stats = cm.getOperations().get("getContacts(String)");
+        assertTrue(stats.getP50Nanos() > 0);
+        assertTrue(stats.getP50Nanos() <= stats.getP90Nanos());
+        assertTrue(stats.getP90Nanos() <= stats.getP99Nanos());
+        assertTrue(stats.getP99Nanos() <= stats.getP999Nanos());
+        assertTrue(stats.getP999Nanos() <= stats.getMaxNanos());
+    }
+
+    @Test
+    public void testResetClearsOperations() {
+        addTestContacts(cm);
+        cm.resetOperations();
+
+        assertEquals(cm.getOperations().get("addNewContact").getCalls(), ZERO);
+        assertEquals(cm.getOperations().get("addNewContact").getMaxNanos(), ZERO);
+    }
+
+    @Test
+    public void testSnapshotSizeAfterFlush() {
+        assertEquals(cm.getSnapshotSize(), -ONE);
+        addTestContacts(cm);
+        cm.addFutureMeeting(cm.getContacts(CONTACT_1_ID), new GregorianCalendar(FUTURE_YEAR, FUTURE_MONTH, FUTURE_DAY));
+        cm.flush();
+
+        assertTrue(cm.getSnapshotSize() > 0);
+        assertEquals(cm.getMeetingCount(), ONE);
+    }
+
+    @Test
+    public void testPersistenceStatsAfterFlushAndLoad() {
+        assertEquals(cm.getPersistence().getFlushes(), ZERO);
+        addTestContacts(cm);
+        cm.flush();
+
+        PersistenceStats flushed = cm.getPersistence();
+        assertEquals(flushed.getFlushes(), ONE);
+        assertEquals(flushed.getFlushFailures(), ZERO);
+        assertEquals(flushed.getBytesWritten(), cm.getSnapshotSize());
+        assertEquals(flushed.getLastFlushBytes(), cm.getSnapshotSize());
+        assertEquals(flushed.getRecordsWritten(), SIX);
+        assertTrue(flushed.getSyncs() > 0);
+        assertTrue(flushed.getLastFlushMillis() > 0);
+        assertTrue(flushed.getLastFlushNanos() <= flushed.getMaxFlushNanos());
+
+        cm = new InstrumentedContactManager(new ContactManagerImpl());
+        cm.getContacts(CONTACT_1_ID);
+        PersistenceStats loaded = cm.getPersistence();
+        assertEquals(loaded.getLoads(), ONE);
+        assertEquals(loaded.getLoadFailures(), ZERO);
+        assertEquals(loaded.getBytesRead(), cm.getSnapshotSize());
+        assertTrue(loaded.getLastLoadRecordsPerSecond() > 0);
+    }
+
+    @Test
+    public void testMetricsAreReadableThroughJmx() throws JMException {
+        ObjectName name = cm.registerMBean("test");
+        addTestContacts(cm);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        assertEquals(server.getAttribute(name, "ContactCount"), SIX);
+        TabularData operations = (TabularData) server.getAttribute(name, "Operations");
+        CompositeData addNewContact = (CompositeData) operations.get(new Object[] { "addNewContact" }).get("value");
+        assertEquals(addNewContact.get("calls"), (long) SIX);
+        cm.flush();
+        CompositeData persistence = (CompositeData) server.getAttribute(name, "Persistence");
+        assertEquals(persistence.get("flushes"), (long) ONE);
+    }
+}
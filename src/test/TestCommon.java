@@ -25,6 +25,12 @@ final class TestCommon {
     private TestCommon () { }
 
     static final String FILENAME = "contacts.txt";
+    static final String BACKUP_FILENAME = "contacts.txt.bak";
+    static final String TEMP_FILENAME = "contacts.txt.tmp";
+    static final String JOURNAL_FILENAME = "contacts.log";
+    static final int SNAPSHOT_MAGIC = 0x434D534E;
+    static final int JOURNAL_MAGIC = 0x434D4A4C;
+    static final int JOURNAL_HEADER_SIZE = 8;
 
     static final int CONTACT_1_ID = 1;
     static final int CONTACT_2_ID = 2;
@@ -84,6 +90,9 @@ final class TestCommon {
     static final int ONE_MILLISECOND = 1;
     static final int FIVE_MILLISECONDS = 5;
     static final int MINUS_FIVE_MILLISECONDS = -5;
+    static final int FIFTY_MILLISECONDS = 50;
+    static final int HUNDRED_MILLISECONDS = 100;
+    static final int HOUR_IN_MILLISECONDS = 60 * 60 * 1000;
 
     static final int ILLEGAL_ID_1 = 11;
     static final int ILLEGAL_ID_2 = 90;
@@ -112,12 +121,31 @@ final class TestCommon {
     static final Set<Contact> EMPTY_CONTACTS = new HashSet<>();
 
     /**
-     * Deletes the ContactManager data file<br>
+     * Deletes the ContactManager data file and its backup<br>
      * The file is assumed to be named "contacts.txt"
      */
     static void deleteDataFile() {
+        deleteFile(FILENAME);
+        deleteFile(BACKUP_FILENAME);
+        deleteFile(TEMP_FILENAME);
+    }
+
+    /**
+     * Deletes the ContactManager journal file<br>
+     * The file is assumed to be named "contacts.log"
+     */
+    static void deleteJournalFile() {
+        deleteFile(JOURNAL_FILENAME);
+    }
+
+    /**
+     * Deletes a file in the working directory if it exists
+     *
+     * @param filename The name of the file
+     */
+    static void deleteFile(String filename) {
         try {
-            Path p = FileSystems.getDefault().getPath(FILENAME);
+            Path p = FileSystems.getDefault().getPath(filename);
             if (Files.exists(p)) {
                 Files.delete(p);
             }
@@ -126,6 +154,15 @@ final class TestCommon {
         }
     }
 
+    /**
+     * @return a date one year from now
+     */
+    static Calendar nextYear() {
+        Calendar date = Calendar.getInstance();
+        date.add(Calendar.YEAR, ONE);
+        return date;
+    }
+
     /**
      * Returns a Set of contacts for testing purposes.
      *